@@ -1,5 +1,6 @@
 package org.romaframework.aspect.view;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
@@ -7,6 +8,10 @@ import java.text.NumberFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -22,26 +27,237 @@ public class FormatHelper {
 
 	public static Log	log	= LogFactory.getLog(FormatHelper.class);
 
+	/**
+	 * Patterns resolved through the I18N aspect, by pattern and locale. The null pattern is the default format of the locale.
+	 */
+	private static final Map<FormatKey, String>	resolvedPatterns	= new ConcurrentHashMap<FormatKey, String>();
+
+	/**
+	 * Marks the patterns that the I18N aspect resolves to null, since the map cannot contain null values.
+	 */
+	private static final String									UNRESOLVED				= new String("");
+
+	/**
+	 * SimpleDateFormat and DecimalFormat are not thread safe: every thread keeps its own instances by resolved pattern and locale.
+	 * A null value marks an invalid pattern.
+	 */
+	private static final ThreadLocal<Map<FormatKey, DateFormat>>	dateFormats	= new ThreadLocal<Map<FormatKey, DateFormat>>() {
+		@Override
+		protected Map<FormatKey, DateFormat> initialValue() {
+			return new HashMap<FormatKey, DateFormat>();
+		}
+	};
+
+	private static final ThreadLocal<Map<FormatKey, NumberFormat>>	numberFormats	= new ThreadLocal<Map<FormatKey, NumberFormat>>() {
+		@Override
+		protected Map<FormatKey, NumberFormat> initialValue() {
+			return new HashMap<FormatKey, NumberFormat>();
+		}
+	};
+
+	/**
+	 * Decode the HTML named entities and the numeric character references of the string.
+	 * 
+	 * @return the decoded string, or the same instance if there is nothing to decode.
+	 */
 	public static String decodeHtml(String iString) {
 		if (iString == null) {
 			return null;
 		}
-		iString = iString.replaceAll("&amp;", "&");
-		iString = iString.replaceAll("&lt;", "<");
-		iString = iString.replaceAll("&gt;", ">");
-		iString = iString.replaceAll("&quot;", "\"");
-		return iString;
+		int[] entity = new int[2];
+		int first = findEntity(iString, 0, entity);
+		if (first == -1)
+			// NO ENTITY, EVEN IF THE STRING CONTAINS '&'
+			return iString;
+
+		StringBuilder buffer = new StringBuilder(iString.length());
+		try {
+			decodeHtml(iString, 0, first, entity, buffer);
+		} catch (IOException e) {
+			// NEVER THROWN BY STRINGBUILDER
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Decode the HTML named entities and the numeric character references of the text, appending the result to the buffer.
+	 */
+	public static void decodeHtml(CharSequence iText, StringBuilder iBuffer) {
+		try {
+			decodeHtml(iText, (Appendable) iBuffer);
+		} catch (IOException e) {
+			// NEVER THROWN BY STRINGBUILDER
+		}
 	}
 
+	/**
+	 * Decode the HTML named entities and the numeric character references of the text, appending the result to the output in a
+	 * single pass, without buffering the text.
+	 */
+	public static void decodeHtml(CharSequence iText, Appendable iOutput) throws IOException {
+		if (iText == null)
+			return;
+		int[] entity = new int[2];
+		decodeHtml(iText, 0, findEntity(iText, 0, entity), entity, iOutput);
+	}
+
+	/**
+	 * Append the text from iFrom decoding the entities, starting from the one found at iEntityStart.
+	 */
+	private static void decodeHtml(CharSequence iText, int iFrom, int iEntityStart, int[] iEntity, Appendable iOutput)
+			throws IOException {
+		int copyFrom = iFrom;
+		for (int start = iEntityStart; start != -1; start = findEntity(iText, copyFrom, iEntity)) {
+			iOutput.append(iText, copyFrom, start);
+			if (iEntity[1] < Character.MIN_SUPPLEMENTARY_CODE_POINT)
+				iOutput.append((char) iEntity[1]);
+			else {
+				char[] chars = Character.toChars(iEntity[1]);
+				iOutput.append(chars[0]).append(chars[1]);
+			}
+			copyFrom = iEntity[0] + 1;
+		}
+		iOutput.append(iText, copyFrom, iText.length());
+	}
+
+	/**
+	 * Find the next valid entity from the position.
+	 * 
+	 * @param iEntity
+	 *          receives the position of the ending ';' and the code point of the entity found
+	 * @return the position of the '&amp;' of the entity, -1 if there are no more entities.
+	 */
+	private static int findEntity(CharSequence iText, int iFrom, int[] iEntity) {
+		int length = iText.length();
+		for (int i = iFrom; i < length; ++i) {
+			if (iText.charAt(i) != '&')
+				continue;
+
+			int end = -1;
+			int max = Math.min(length, i + HtmlEntities.MAX_NAME_LENGTH + 2);
+			for (int j = i + 1; j < max; ++j)
+				if (iText.charAt(j) == ';') {
+					end = j;
+					break;
+				}
+
+			int codePoint = end > i + 1 ? decodeEntity(iText, i + 1, end) : -1;
+			if (codePoint != -1) {
+				iEntity[0] = end;
+				iEntity[1] = codePoint;
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the code point of the entity between '&amp;' and ';', or -1 if it's not a valid entity.
+	 */
+	private static int decodeEntity(CharSequence iText, int iFrom, int iTo) {
+		if (iText.charAt(iFrom) != '#') {
+			Character c = HtmlEntities.get(iText.subSequence(iFrom, iTo).toString());
+			return c != null ? c.charValue() : -1;
+		}
+
+		int radix = 10;
+		int pos = iFrom + 1;
+		if (pos < iTo && (iText.charAt(pos) == 'x' || iText.charAt(pos) == 'X')) {
+			radix = 16;
+			pos++;
+		}
+		if (pos == iTo)
+			return -1;
+
+		int codePoint = 0;
+		for (; pos < iTo; ++pos) {
+			int digit = Character.digit(iText.charAt(pos), radix);
+			if (digit == -1)
+				return -1;
+			codePoint = codePoint * radix + digit;
+			if (codePoint > Character.MAX_CODE_POINT)
+				return -1;
+		}
+		return codePoint;
+	}
+
+	/**
+	 * Encode the HTML special characters of the string: &amp;, &lt;, &gt; and &quot;.
+	 * 
+	 * @return the encoded string, or the same instance if there is nothing to encode.
+	 */
 	public static String encodeHtml(String iString) {
 		if (iString == null) {
 			return null;
 		}
-		iString = iString.replaceAll("&", "&amp;");
-		iString = iString.replaceAll("<", "&lt;");
-		iString = iString.replaceAll(">", "&gt;");
-		iString = iString.replaceAll("\"", "&quot;");
-		return iString;
+		int length = iString.length();
+		int first = 0;
+		while (first < length && getHtmlEscape(iString.charAt(first)) == null)
+			first++;
+		if (first == length)
+			return iString;
+
+		StringBuilder buffer = new StringBuilder(length + 16);
+		buffer.append(iString, 0, first);
+		encodeHtml(iString, first, buffer);
+		return buffer.toString();
+	}
+
+	/**
+	 * Encode the HTML special characters of the text, appending the result to the buffer.
+	 */
+	public static void encodeHtml(CharSequence iText, StringBuilder iBuffer) {
+		if (iText != null)
+			encodeHtml(iText, 0, iBuffer);
+	}
+
+	/**
+	 * Encode the HTML special characters of the text, appending the result to the output.
+	 */
+	public static void encodeHtml(CharSequence iText, Appendable iOutput) throws IOException {
+		if (iText == null)
+			return;
+		if (iOutput instanceof StringBuilder) {
+			encodeHtml(iText, 0, (StringBuilder) iOutput);
+			return;
+		}
+		int length = iText.length();
+		int copyFrom = 0;
+		for (int i = 0; i < length; ++i) {
+			String escape = getHtmlEscape(iText.charAt(i));
+			if (escape != null) {
+				iOutput.append(iText, copyFrom, i).append(escape);
+				copyFrom = i + 1;
+			}
+		}
+		iOutput.append(iText, copyFrom, length);
+	}
+
+	private static void encodeHtml(CharSequence iText, int iFrom, StringBuilder iBuffer) {
+		int length = iText.length();
+		int copyFrom = iFrom;
+		for (int i = iFrom; i < length; ++i) {
+			String escape = getHtmlEscape(iText.charAt(i));
+			if (escape != null) {
+				iBuffer.append(iText, copyFrom, i).append(escape);
+				copyFrom = i + 1;
+			}
+		}
+		iBuffer.append(iText, copyFrom, length);
+	}
+
+	private static String getHtmlEscape(char c) {
+		switch (c) {
+		case '&':
+			return "&amp;";
+		case '<':
+			return "&lt;";
+		case '>':
+			return "&gt;";
+		case '"':
+			return "&quot;";
+		}
+		return null;
 	}
 
 	/**
@@ -63,7 +279,7 @@ public class FormatHelper {
 		if (value != null) {
 			if (fieldType.isAssignableAs(Roma.schema().getSchemaClass(Number.class))) {
 				if (!stringValue.isEmpty()) {
-					NumberFormat format = FormatHelper.getNumberFormat(schemaField);
+					NumberFormat format = cachedNumberFormat(schemaField);
 					try {
 						result = format.parse(stringValue);
 					} catch (ParseException e) {
@@ -73,7 +289,7 @@ public class FormatHelper {
 					result = null;
 			} else if (fieldType.isAssignableAs(Roma.schema().getSchemaClass(Date.class))) {
 				if (!stringValue.isEmpty()) {
-					DateFormat format = FormatHelper.getDateFormat(schemaField);
+					DateFormat format = cachedDateFormat(schemaField);
 					try {
 						result = format.parse(stringValue);
 					} catch (ParseException e) {
@@ -119,13 +335,13 @@ public class FormatHelper {
 			formattedValue = "";
 		} else if (toFormat instanceof Date) {
 			try {
-				formattedValue = getDateFormat(schemaField).format(toFormat);
+				formattedValue = cachedDateFormat(schemaField).format(toFormat);
 			} catch (Throwable t) {
 				formattedValue = toFormat.toString();
 			}
 		} else if (toFormat instanceof Number) {
 			try {
-				formattedValue = getNumberFormat(schemaField).format(toFormat);
+				formattedValue = cachedNumberFormat(schemaField).format(toFormat);
 			} catch (Throwable t) {
 				formattedValue = toFormat.toString();
 			}
@@ -153,13 +369,13 @@ public class FormatHelper {
 			formattedValue = "";
 		} else if (toFormat instanceof Date) {
 			try {
-				formattedValue = getDateFormat(format).format(toFormat);
+				formattedValue = cachedDateFormat(format, "Invalid date Format :" + format).format(toFormat);
 			} catch (Throwable t) {
 				formattedValue = toFormat.toString();
 			}
 		} else if (toFormat instanceof Number) {
 			try {
-				formattedValue = getNumberFormat(format).format(toFormat);
+				formattedValue = cachedNumberFormat(format, "Invalid number Format :" + format).format(toFormat);
 			} catch (Throwable t) {
 				formattedValue = toFormat.toString();
 			}
@@ -172,7 +388,14 @@ public class FormatHelper {
 		return formattedValue;
 	}
 
+	/**
+	 * Return the date format of the field. The instance returned is owned by the caller.
+	 */
 	public static DateFormat getDateFormat(SchemaField iField) {
+		return (DateFormat) cachedDateFormat(iField).clone();
+	}
+
+	private static DateFormat cachedDateFormat(SchemaField iField) {
 		String message = null;
 		String format = null;
 		if (iField != null) {
@@ -182,21 +405,39 @@ public class FormatHelper {
 			message = "Invalid default date format.";
 		}
 
-		return internalDateFormat(format, message);
+		return cachedDateFormat(format, message);
 	}
 
 	public static DateFormat getDateFormat(String format) {
 		return internalDateFormat(format, "Invalid date Format :" + format);
 	}
 
+	/**
+	 * Return the date format for the pattern in the active locale. The instance returned is owned by the caller.
+	 */
 	public static DateFormat internalDateFormat(String format, String errorMessage) {
+		return (DateFormat) cachedDateFormat(format, errorMessage).clone();
+	}
+
+	/**
+	 * Return the date format for the pattern in the active locale, cached and owned by the current thread: it must not be modified
+	 * or shared with other threads.
+	 */
+	private static DateFormat cachedDateFormat(String format, String errorMessage) {
 		DateFormat dateFormat = null;
-		format = Roma.component(I18NAspect.class).resolve(format);
+		Locale locale = Roma.session().getActiveLocale();
+		format = resolvePattern(format, locale);
 		if (format != null) {
-			try {
-				dateFormat = new SimpleDateFormat(format, Roma.session().getActiveLocale());
-			} catch (IllegalArgumentException ex) {
-				log.warn(errorMessage);
+			FormatKey key = new FormatKey(format, locale);
+			Map<FormatKey, DateFormat> formats = dateFormats.get();
+			dateFormat = formats.get(key);
+			if (dateFormat == null && !formats.containsKey(key)) {
+				try {
+					dateFormat = new SimpleDateFormat(format, locale);
+				} catch (IllegalArgumentException ex) {
+					log.warn(errorMessage);
+				}
+				formats.put(key, dateFormat);
 			}
 		}
 		if (dateFormat == null) {
@@ -209,7 +450,14 @@ public class FormatHelper {
 		return internalNumberFormat(format, "Invalid number Format :" + format);
 	}
 
+	/**
+	 * Return the number format of the field. The instance returned is owned by the caller.
+	 */
 	public static NumberFormat getNumberFormat(SchemaField iField) {
+		return (NumberFormat) cachedNumberFormat(iField).clone();
+	}
+
+	private static NumberFormat cachedNumberFormat(SchemaField iField) {
 		String message = null;
 		String format = null;
 		if (iField != null) {
@@ -218,17 +466,35 @@ public class FormatHelper {
 		} else {
 			message = "Invalid default number format.";
 		}
-		return internalNumberFormat(format, message);
+		return cachedNumberFormat(format, message);
 	}
 
+	/**
+	 * Return the number format for the pattern in the active locale. The instance returned is owned by the caller.
+	 */
 	public static NumberFormat internalNumberFormat(String format, String errorMessage) {
+		return (NumberFormat) cachedNumberFormat(format, errorMessage).clone();
+	}
+
+	/**
+	 * Return the number format for the pattern in the active locale, cached and owned by the current thread: it must not be modified
+	 * or shared with other threads.
+	 */
+	private static NumberFormat cachedNumberFormat(String format, String errorMessage) {
 		NumberFormat numberFormat = null;
-		format = Roma.component(I18NAspect.class).resolve(format);
+		Locale locale = Roma.session().getActiveLocale();
+		format = resolvePattern(format, locale);
 		if (format != null) {
-			try {
-				numberFormat = new DecimalFormat(format, new DecimalFormatSymbols(Roma.session().getActiveLocale()));
-			} catch (IllegalArgumentException ex) {
-				log.warn(errorMessage);
+			FormatKey key = new FormatKey(format, locale);
+			Map<FormatKey, NumberFormat> formats = numberFormats.get();
+			numberFormat = formats.get(key);
+			if (numberFormat == null && !formats.containsKey(key)) {
+				try {
+					numberFormat = new DecimalFormat(format, new DecimalFormatSymbols(locale));
+				} catch (IllegalArgumentException ex) {
+					log.warn(errorMessage);
+				}
+				formats.put(key, numberFormat);
 			}
 		}
 		if (numberFormat == null) {
@@ -237,4 +503,48 @@ public class FormatHelper {
 		return numberFormat;
 	}
 
+	/**
+	 * Resolve the pattern through the I18N aspect once per pattern and locale, including the null pattern of the fields without
+	 * format.
+	 */
+	protected static String resolvePattern(String format, Locale locale) {
+		FormatKey key = new FormatKey(format, locale);
+		String resolved = resolvedPatterns.get(key);
+		if (resolved == null) {
+			resolved = Roma.component(I18NAspect.class).resolve(format);
+			resolvedPatterns.put(key, resolved != null ? resolved : UNRESOLVED);
+		}
+		return resolved != UNRESOLVED ? resolved : null;
+	}
+
+	/**
+	 * Clear the resolved patterns. It's called by the ViewAspect when a class is reloaded: call it also after reloading the I18N
+	 * resources by other means. The formatters of the threads are keyed by resolved pattern, so they don't need to be cleared.
+	 */
+	public static void clearFormatCache() {
+		resolvedPatterns.clear();
+	}
+
+	private static class FormatKey {
+		private final String	pattern;
+		private final Locale	locale;
+
+		public FormatKey(String iPattern, Locale iLocale) {
+			pattern = iPattern;
+			locale = iLocale;
+		}
+
+		@Override
+		public int hashCode() {
+			return (pattern != null ? pattern.hashCode() : 0) * 31 + (locale != null ? locale.hashCode() : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FormatKey))
+				return false;
+			FormatKey other = (FormatKey) obj;
+			return (pattern == null ? other.pattern == null : pattern.equals(other.pattern)) && (locale == null ? other.locale == null : locale.equals(other.locale));
+		}
+	}
 }
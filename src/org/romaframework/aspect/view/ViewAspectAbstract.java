@@ -17,12 +17,9 @@
 package org.romaframework.aspect.view;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +48,8 @@ import org.romaframework.aspect.view.feature.ViewActionFeatures;
 import org.romaframework.aspect.view.feature.ViewClassFeatures;
 import org.romaframework.aspect.view.feature.ViewFieldFeatures;
 import org.romaframework.aspect.view.form.ContentForm;
+import org.romaframework.aspect.view.form.FormLifecycleManager;
+import org.romaframework.aspect.view.form.FormRegistry;
 import org.romaframework.aspect.view.form.FormViewer;
 import org.romaframework.aspect.view.form.ViewComponent;
 import org.romaframework.aspect.view.screen.Screen;
@@ -82,15 +81,17 @@ import org.romaframework.core.schema.xmlannotations.XmlFormAnnotation;
  * 
  */
 public abstract class ViewAspectAbstract extends SelfRegistrantConfigurableModule<String> implements ViewAspect, SessionListener, SchemaReloadListener, ObjectRefreshListener {
-	protected Map<SessionInfo, Map<Object, ViewComponent>>	objectsForms;
+	protected FormRegistry					objectsForms;
+	protected FormLifecycleManager	formLifecycle;
 
-	private static Log																			log	= LogFactory.getLog(ViewAspectAbstract.class);
+	private static Log							log	= LogFactory.getLog(ViewAspectAbstract.class);
 
 	public ViewAspectAbstract() {
 		Controller.getInstance().registerListener(SessionListener.class, this);
 		Controller.getInstance().registerListener(SchemaReloadListener.class, this);
 
-		objectsForms = Collections.synchronizedMap(new HashMap<SessionInfo, Map<Object, ViewComponent>>());
+		objectsForms = new FormRegistry();
+		formLifecycle = new FormLifecycleManager(objectsForms);
 	}
 
 	@Override
@@ -296,6 +297,8 @@ public abstract class ViewAspectAbstract extends SelfRegistrantConfigurableModul
 			iPosition = getScreen().getActiveArea();
 		}
 
+		objectsForms.setDisplayed(iSession != null ? iSession : Roma.session().getActiveSessionInfo(), iPosition, form);
+
 		if (currentSession)
 			// DISPLAY NOW
 			showForm(form, iPosition, iScreen);
@@ -384,17 +387,18 @@ public abstract class ViewAspectAbstract extends SelfRegistrantConfigurableModul
 	}
 
 	public void onSessionCreating(SessionInfo iSession) {
-		objectsForms.put(iSession, new IdentityHashMap<Object, ViewComponent>());
+		objectsForms.createSession(iSession);
 	}
 
 	public void onSessionDestroying(SessionInfo iSession) {
 		// REMOVE OBJECTS-AREA/COMPONENTS ASSOCIATION FOR CURRENT SESSION
-		Map<Object, ViewComponent> forms = objectsForms.remove(iSession);
-		if (forms != null) {
+		formLifecycle.removeSession(iSession);
+		Collection<ViewComponent> forms = objectsForms.removeSession(iSession);
+		if (!forms.isEmpty()) {
 			if (log.isDebugEnabled())
-				log.debug("[ObjectContext.onSessionDestroying] Removing components " + forms.values().size());
+				log.debug("[ObjectContext.onSessionDestroying] Removing components " + forms.size());
 
-			for (ViewComponent c : forms.values()) {
+			for (ViewComponent c : forms) {
 				c.destroy();
 			}
 
@@ -416,8 +420,8 @@ public abstract class ViewAspectAbstract extends SelfRegistrantConfigurableModul
 		if (iSession == null)
 			throw new UserException(iForm.getContent(), "Cannot display the form since there is no active session");
 
-		Map<Object, ViewComponent> userForms = objectsForms.get(iSession);
-		userForms.put(iUserObject, iForm);
+		objectsForms.put(iSession, iUserObject, iForm);
+		formLifecycle.checkSession(iSession);
 	}
 
 	public void removeObjectFormAssociation(Object iUserObject, SessionInfo iSession) {
@@ -426,12 +430,29 @@ public abstract class ViewAspectAbstract extends SelfRegistrantConfigurableModul
 				iSession = Roma.session().getActiveSessionInfo();
 
 		// REMOVE OBJECT-FORM ASSOCIATION
-		Map<Object, ViewComponent> userForms = objectsForms.get(iSession);
-		if (userForms != null) {
-			if (log.isDebugEnabled())
-				log.debug("[ViewAspectAbstract.removeObjectFormAssociation] Flushing form: " + iUserObject);
-			userForms.remove(iUserObject);
-		}
+		if (objectsForms.remove(iSession, iUserObject) != null && log.isDebugEnabled())
+			log.debug("[ViewAspectAbstract.removeObjectFormAssociation] Flushing form: " + iUserObject);
+	}
+
+	/**
+	 * Return the manager that evicts the unused forms and reports the forms per session.
+	 */
+	public FormLifecycleManager getFormLifecycle() {
+		return formLifecycle;
+	}
+
+	/**
+	 * Set the milliseconds after which a form not in the flow history is evicted, 0 (default) to disable.
+	 */
+	public void setFormMaxIdleTime(long iMaxIdleTime) {
+		formLifecycle.setMaxIdleTime(iMaxIdleTime);
+	}
+
+	/**
+	 * Set the maximum number of forms per session, 0 (default) to disable. Forms in the flow history are never evicted.
+	 */
+	public void setFormMaxPerSession(int iMaxForms) {
+		formLifecycle.setMaxForms(iMaxForms);
 	}
 
 	/**
@@ -456,12 +477,7 @@ public abstract class ViewAspectAbstract extends SelfRegistrantConfigurableModul
 		if (iSession == null)
 			iSession = Roma.component(SessionAspect.class).getActiveSessionInfo();
 
-		Map<Object, ViewComponent> userForms = objectsForms.get(iSession);
-
-		if (userForms == null)
-			return null;
-
-		return userForms.get(iUserObject);
+		return objectsForms.get(iSession, iUserObject);
 	}
 
 	/**
@@ -477,17 +493,7 @@ public abstract class ViewAspectAbstract extends SelfRegistrantConfigurableModul
 		if (iSession == null)
 			iSession = Roma.component(SessionAspect.class).getActiveSessionInfo();
 
-		Map<Object, ViewComponent> userForms = objectsForms.get(iSession);
-
-		if (userForms == null)
-			return null;
-
-		List<ViewComponent> result = new ArrayList<ViewComponent>();
-		for (Map.Entry<Object, ViewComponent> entry : userForms.entrySet()) {
-			if (entry.getValue().getSchemaObject().getSchemaClass().equals(iClassOfObject))
-				result.add(entry.getValue());
-		}
-		return result;
+		return objectsForms.getForms(iSession, iClassOfObject);
 	}
 
 	/**
@@ -498,33 +504,14 @@ public abstract class ViewAspectAbstract extends SelfRegistrantConfigurableModul
 	 * @return Map<SessionInfo, ContentComponent> with all entries that are handling POJOs of class iClass
 	 */
 	public Map<SessionInfo, ViewComponent> getFormsByClass(SchemaClass iClass) {
-		Map<SessionInfo, ViewComponent> result = new HashMap<SessionInfo, ViewComponent>();
-
-		Map<Object, ViewComponent> perSessionObjects;
-
-		SchemaClass cls;
-		for (Map.Entry<SessionInfo, Map<Object, ViewComponent>> entry : objectsForms.entrySet()) {
-			perSessionObjects = entry.getValue();
-			for (Map.Entry<Object, ViewComponent> formEntry : perSessionObjects.entrySet()) {
-				if (formEntry.getKey() == null)
-					continue;
-
-				try {
-					cls = Roma.schema().getSchemaClass(formEntry.getKey());
-
-					if (cls.extendsClass(iClass))
-						result.put(entry.getKey(), formEntry.getValue());
-				} catch (Exception e) {
-				}
-			}
-		}
-		return result;
+		return objectsForms.getForms(iClass);
 	}
 
 	/**
-	 * Refresh the changed objects.
+	 * Refresh the changed objects. The formats are resolved again through the I18N aspect.
 	 */
 	public void signalUpdatedClass(SchemaClass iSchemaClass, File iFile) {
+		FormatHelper.clearFormatCache();
 		// OVERWRITE LIVING OBJECT SCHEMA OBJECTS BY COPYING NEW DEFINITION AND REFRESH ITS
 		Map<SessionInfo, ViewComponent> forms = getFormsByClass(iSchemaClass);
 		for (Map.Entry<SessionInfo, ViewComponent> entry : forms.entrySet()) {
@@ -552,6 +539,31 @@ public abstract class ViewAspectAbstract extends SelfRegistrantConfigurableModul
 		}
 	}
 
+	/**
+	 * Return the provider of the rows of a table field, to read only the rows visible. The provider is the value of the field, or the
+	 * object owning it if the field is rendered as table or rowset and the owner provides the rows of that field.
+	 * 
+	 * @param iContent
+	 *          the object owning the field
+	 * @param iField
+	 *          the field rendered
+	 * @return the provider if any, otherwise null to render the whole value of the field
+	 */
+	public WindowedDataProvider<?> getDataProvider(Object iContent, SchemaField iField) {
+		if (iContent == null || iField == null)
+			return null;
+
+		Object value = iField.getValue(iContent);
+		if (value instanceof WindowedDataProvider<?>)
+			return (WindowedDataProvider<?>) value;
+
+		String render = iField.getFeature(ViewFieldFeatures.RENDER);
+		if (iContent instanceof WindowedDataProvider<?> && (ViewConstants.RENDER_TABLE.equals(render) || ViewConstants.RENDER_ROWSET.equals(render))
+				&& ((WindowedDataProvider<?>) iContent).providesRows(iField.getName()))
+			return (WindowedDataProvider<?>) iContent;
+		return null;
+	}
+
 	public String aspectName() {
 		return ASPECT_NAME;
 	}
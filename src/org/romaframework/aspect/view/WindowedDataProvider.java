@@ -0,0 +1,59 @@
+/*
+ * Copyright 2006-2007 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.aspect.view;
+
+import java.util.List;
+
+/**
+ * Range addressable source of the rows of a table. Implemented by the objects that own a RENDER_TABLE or RENDER_ROWSET field, or by
+ * the value of the field itself, to let the renderers read only the rows visible (virtual scrolling) instead of the whole list.
+ * Use ViewAspectAbstract.getDataProvider() to detect it.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ */
+public interface WindowedDataProvider<T> {
+
+	/**
+	 * Tell if the provider supplies the rows of the field, when it's implemented by the object owning the field. An owner can have
+	 * other table fields whose rows come from their own value.
+	 * 
+	 * @param iFieldName
+	 *          the name of the table or rowset field of the owner
+	 */
+	public boolean providesRows(String iFieldName);
+
+	/**
+	 * Return the total number of rows.
+	 */
+	public int size();
+
+	/**
+	 * Return the rows in the range, without changing the rows displayed.
+	 * 
+	 * @param iFrom
+	 *          the position of the first row
+	 * @param iCount
+	 *          the max number of rows to return, less are returned at the end
+	 */
+	public List<T> fetch(int iFrom, int iCount);
+
+	/**
+	 * Discard the rows kept in memory: the next fetches read them again. Annotations of interfaces are not inherited: hide it in
+	 * the implementations with @ViewAction(visible = AnnotationConstants.FALSE).
+	 */
+	public void invalidate();
+}
@@ -1,7 +1,11 @@
 package org.romaframework.aspect.view.event;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.romaframework.aspect.persistence.PersistenceAspect;
 import org.romaframework.aspect.persistence.QueryByFilter;
@@ -11,29 +15,76 @@ import org.romaframework.core.schema.SchemaClass;
 import org.romaframework.core.schema.SchemaEvent;
 import org.romaframework.core.schema.SchemaField;
 import org.romaframework.core.schema.SchemaParameter;
+import org.romaframework.frontend.domain.typeahead.ReferenceDataTypeAhead;
+import org.romaframework.frontend.domain.typeahead.TypeAheadCoalescer;
+import org.romaframework.frontend.domain.typeahead.TypeAheadResult;
+import org.romaframework.frontend.util.ReferenceDataCache;
 
 public class SchemaEventSearch extends SchemaEvent {
 
-	private static final long	serialVersionUID	= -5781697247853066424L;
+	private static final long																			serialVersionUID	= -5781697247853066424L;
+
+	/**
+	 * Max number of suggestions returned by a search on a cached reference class.
+	 */
+	public static final int																				DEF_LIMIT					= 50;
+
+	private static final Map<Class<?>, ReferenceDataTypeAhead<Object>>	typeAheads				= new ConcurrentHashMap<Class<?>, ReferenceDataTypeAhead<Object>>();
 
 	public SchemaEventSearch(SchemaField iField) {
 		super(iField, "search", Arrays.asList(new SchemaParameter[] { new SchemaParameter("param1",0, Roma.schema().getSchemaClass(String.class)) }));
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public Object invokeFinal(Object iContent, Object[] params) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
 		SchemaClass sc = field.getType().getSchemaClass();
-		GenericRepository<?> repo = Roma.repository(sc);
+		final GenericRepository<Object> repo = (GenericRepository<Object>) Roma.repository(sc);
+		final Class<Object> cls = (Class<Object>) sc.getLanguageType();
 		if (repo != null) {
-			if (params != null && params.length != 0 && params[0] instanceof String)
+			if (params != null && params.length != 0 && params[0] instanceof String) {
+				if (ReferenceDataCache.getInstance().isCached(cls))
+					return typeAhead(cls, (String) params[0], new ReferenceDataCache.Loader<Object>() {
+						public List<Object> load() {
+							return repo.getAll();
+						}
+					});
 				return repo.search((String) params[0]);
-			else
-				return repo.getAll();
+			} else
+				return copy(ReferenceDataCache.getInstance().getAll(cls, new ReferenceDataCache.Loader<Object>() {
+					public List<Object> load() {
+						return repo.getAll();
+					}
+				}));
 		} else {
-			QueryByFilter filter = new QueryByFilter((Class<?>) sc.getLanguageType());
-			filter.setStrategy(PersistenceAspect.STRATEGY_DETACHING);
-			return Roma.context().persistence().query(filter);
+			return copy(ReferenceDataCache.getInstance().getAll(cls, new ReferenceDataCache.Loader<Object>() {
+				public List<Object> load() {
+					QueryByFilter filter = new QueryByFilter(cls);
+					filter.setStrategy(PersistenceAspect.STRATEGY_DETACHING);
+					return Roma.context().persistence().query(filter);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Search in memory the first DEF_LIMIT instances of the cached class matching the text. Rapid searches on the same field of the
+	 * same session supersede the previous ones, that return an empty list.
+	 */
+	private List<Object> typeAhead(Class<Object> iClass, String iText, ReferenceDataCache.Loader<Object> iLoader) {
+		ReferenceDataTypeAhead<Object> provider = typeAheads.get(iClass);
+		if (provider == null) {
+			provider = new ReferenceDataTypeAhead<Object>(iClass, iLoader, true);
+			typeAheads.put(iClass, provider);
 		}
+
+		Object key = Arrays.asList(Roma.session().getActiveSessionInfo(), field);
+		TypeAheadResult<Object> result = TypeAheadCoalescer.getInstance().search(key, provider, iText, null, DEF_LIMIT);
+		return result != null ? new ArrayList<Object>(result.getItems()) : new ArrayList<Object>();
+	}
+
+	private List<Object> copy(List<Object> iList) {
+		return iList != null ? new ArrayList<Object>(iList) : null;
 	}
 
 }
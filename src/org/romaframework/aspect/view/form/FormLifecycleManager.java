@@ -0,0 +1,250 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.aspect.view.form;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.romaframework.aspect.session.SessionInfo;
+import org.romaframework.aspect.view.form.FormRegistry.Registration;
+import org.romaframework.core.Roma;
+
+/**
+ * Evicts the forms of a session that are not used anymore. A form is a candidate when its root form does not render any object in
+ * the flow history of the session and is not displayed in a screen area or in a popup. Candidates are evicted when idle for more than maxIdleTime milliseconds, and the least recently
+ * used are evicted when the session has more than maxForms forms. Both the policies are disabled by default (value 0).
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class FormLifecycleManager {
+
+	public static final long						DEF_FORM_SIZE_ESTIMATE	= 4096;
+
+	protected FormRegistry							registry;
+	protected long											maxIdleTime;
+	protected int												maxForms;
+	protected long											formSizeEstimate				= DEF_FORM_SIZE_ESTIMATE;
+	protected Map<SessionInfo, Long>		lastCheck								= new ConcurrentHashMap<SessionInfo, Long>();
+
+	private static Log									log											= LogFactory.getLog(FormLifecycleManager.class);
+
+	public FormLifecycleManager(FormRegistry iRegistry) {
+		registry = iRegistry;
+	}
+
+	public boolean isEnabled() {
+		return maxIdleTime > 0 || maxForms > 0;
+	}
+
+	/**
+	 * Evict the forms of the session if a policy requires it. The idle check is executed at most every half of maxIdleTime.
+	 * 
+	 * @param iSession
+	 *          the session to check
+	 */
+	public void checkSession(SessionInfo iSession) {
+		if (!isEnabled() || iSession == null)
+			return;
+
+		long now = System.currentTimeMillis();
+		Long last = lastCheck.get(iSession);
+		boolean idleCheck = maxIdleTime > 0 && (last == null || now - last > maxIdleTime / 2);
+		boolean countCheck = maxForms > 0 && registry.size(iSession) > maxForms;
+		if (idleCheck || countCheck) {
+			lastCheck.put(iSession, now);
+			evict(iSession, now);
+		}
+	}
+
+	public void removeSession(SessionInfo iSession) {
+		lastCheck.remove(iSession);
+	}
+
+	/**
+	 * Evict the candidate forms of the session following the policies.
+	 * 
+	 * @return the number of forms removed.
+	 */
+	public int evict(SessionInfo iSession, long iNow) {
+		List<FormGroup> candidates = getCandidates(iSession);
+		int total = registry.size(iSession);
+		int removed = 0;
+
+		if (maxIdleTime > 0)
+			for (FormGroup group : new ArrayList<FormGroup>(candidates)) {
+				if (iNow - group.lastAccess > maxIdleTime) {
+					removed += evict(iSession, group);
+					candidates.remove(group);
+				}
+			}
+
+		if (maxForms > 0 && total - removed > maxForms) {
+			// LEAST RECENTLY USED FIRST
+			Collections.sort(candidates, new Comparator<FormGroup>() {
+				public int compare(FormGroup o1, FormGroup o2) {
+					return o1.lastAccess < o2.lastAccess ? -1 : (o1.lastAccess == o2.lastAccess ? 0 : 1);
+				}
+			});
+			for (FormGroup group : candidates) {
+				if (total - removed <= maxForms)
+					break;
+				removed += evict(iSession, group);
+			}
+		}
+
+		if (removed > 0 && log.isDebugEnabled())
+			log.debug("[FormLifecycleManager.evict] Evicted " + removed + " forms for session=" + iSession);
+		return removed;
+	}
+
+	/**
+	 * Return the number of forms of the session.
+	 */
+	public int getFormCount(SessionInfo iSession) {
+		return registry.size(iSession);
+	}
+
+	/**
+	 * Return a rough estimate of the memory retained by the forms of the session, computed as number of forms multiplied by
+	 * formSizeEstimate.
+	 */
+	public long getRetainedSizeEstimate(SessionInfo iSession) {
+		return registry.size(iSession) * formSizeEstimate;
+	}
+
+	/**
+	 * Return the number of forms for every session.
+	 */
+	public Map<SessionInfo, Integer> getFormCounts() {
+		Map<SessionInfo, Integer> result = new IdentityHashMap<SessionInfo, Integer>();
+		for (SessionInfo session : registry.getSessions())
+			result.put(session, registry.size(session));
+		return result;
+	}
+
+	protected int evict(SessionInfo iSession, FormGroup iGroup) {
+		for (Registration registration : iGroup.registrations)
+			registry.remove(iSession, registration.userObject);
+		iGroup.root.destroy();
+		return iGroup.registrations.size();
+	}
+
+	/**
+	 * Group the forms by root form and return the groups that don't render any object in the flow history and are not displayed.
+	 */
+	protected List<FormGroup> getCandidates(SessionInfo iSession) {
+		Map<Object, Object> inUse = new IdentityHashMap<Object, Object>();
+		Map<String, Stack<Object>> history = Roma.flow().getHistory(iSession);
+		if (history != null)
+			for (Stack<Object> areaHistory : history.values())
+				for (Object o : areaHistory)
+					inUse.put(o, o);
+
+		Map<ViewComponent, ViewComponent> displayed = new IdentityHashMap<ViewComponent, ViewComponent>();
+		for (ViewComponent form : registry.getDisplayed(iSession)) {
+			ViewComponent root = getRoot(form);
+			displayed.put(root, root);
+		}
+
+		Map<ViewComponent, FormGroup> groups = new IdentityHashMap<ViewComponent, FormGroup>();
+		Collection<Registration> registrations = registry.getRegistrations(iSession);
+		for (Registration registration : registrations) {
+			ViewComponent root = getRoot(registration.form);
+
+			FormGroup group = groups.get(root);
+			if (group == null) {
+				group = new FormGroup(root);
+				groups.put(root, group);
+			}
+			group.add(registration, inUse.containsKey(registration.userObject) || displayed.containsKey(root));
+		}
+
+		List<FormGroup> result = new ArrayList<FormGroup>();
+		for (FormGroup group : groups.values())
+			if (!group.inUse)
+				result.add(group);
+		return result;
+	}
+
+	protected ViewComponent getRoot(ViewComponent iForm) {
+		ViewComponent root = iForm;
+		while (root.getContainerComponent() != null)
+			root = root.getContainerComponent();
+		return root;
+	}
+
+	public long getMaxIdleTime() {
+		return maxIdleTime;
+	}
+
+	/**
+	 * Set the milliseconds after which a form not in the flow history nor displayed is evicted, 0 to disable.
+	 */
+	public void setMaxIdleTime(long maxIdleTime) {
+		this.maxIdleTime = maxIdleTime;
+	}
+
+	public int getMaxForms() {
+		return maxForms;
+	}
+
+	/**
+	 * Set the maximum number of forms per session, 0 to disable. Forms in the flow history or displayed are never evicted, so the limit can be
+	 * exceeded.
+	 */
+	public void setMaxForms(int maxForms) {
+		this.maxForms = maxForms;
+	}
+
+	public long getFormSizeEstimate() {
+		return formSizeEstimate;
+	}
+
+	public void setFormSizeEstimate(long formSizeEstimate) {
+		this.formSizeEstimate = formSizeEstimate;
+	}
+
+	/**
+	 * A root form with all the forms contained.
+	 */
+	protected static class FormGroup {
+		protected ViewComponent				root;
+		protected List<Registration>	registrations	= new ArrayList<Registration>();
+		protected long								lastAccess;
+		protected boolean							inUse;
+
+		public FormGroup(ViewComponent iRoot) {
+			root = iRoot;
+		}
+
+		public void add(Registration iRegistration, boolean iInUse) {
+			registrations.add(iRegistration);
+			lastAccess = Math.max(lastAccess, iRegistration.lastAccess);
+			inUse |= iInUse;
+		}
+	}
+}
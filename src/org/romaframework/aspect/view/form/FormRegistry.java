@@ -0,0 +1,293 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.aspect.view.form;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.romaframework.aspect.session.SessionInfo;
+import org.romaframework.core.Roma;
+import org.romaframework.core.schema.SchemaClass;
+
+/**
+ * Thread-safe registry of the associations between user objects and forms, per session. User objects are compared by identity.
+ * A secondary index by SchemaClass of the user object allows to find the forms of a class without scanning all the forms of all
+ * the sessions. The registry also tracks the forms displayed in the screen areas of every session.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class FormRegistry {
+
+	protected ConcurrentMap<SessionInfo, ConcurrentMap<IdentityKey, Registration>>	sessions		= new ConcurrentHashMap<SessionInfo, ConcurrentMap<IdentityKey, Registration>>();
+	protected ConcurrentMap<SchemaClass, ConcurrentMap<Registration, Boolean>>				formsByClass	= new ConcurrentHashMap<SchemaClass, ConcurrentMap<Registration, Boolean>>();
+	protected ConcurrentMap<SessionInfo, ConcurrentMap<String, ViewComponent>>				displayed			= new ConcurrentHashMap<SessionInfo, ConcurrentMap<String, ViewComponent>>();
+
+	public void createSession(SessionInfo iSession) {
+		getSessionForms(iSession);
+	}
+
+	/**
+	 * Remove all the associations of the session.
+	 * 
+	 * @return the forms of the session, empty if none.
+	 */
+	public Collection<ViewComponent> removeSession(SessionInfo iSession) {
+		List<ViewComponent> result = new ArrayList<ViewComponent>();
+		if (iSession != null)
+			displayed.remove(iSession);
+		Map<IdentityKey, Registration> forms = iSession != null ? sessions.remove(iSession) : null;
+		if (forms != null)
+			for (Registration registration : forms.values()) {
+				unindex(registration);
+				result.add(registration.form);
+			}
+		return result;
+	}
+
+	public void put(SessionInfo iSession, Object iUserObject, ViewComponent iForm) {
+		Registration registration = new Registration(iSession, iUserObject, iForm, getSchemaClass(iUserObject));
+		Registration old = getSessionForms(iSession).put(new IdentityKey(iUserObject), registration);
+		if (old != null)
+			unindex(old);
+		index(registration);
+	}
+
+	public ViewComponent remove(Object iSession, Object iUserObject) {
+		Map<IdentityKey, Registration> forms = findSessionForms(iSession);
+		if (forms == null)
+			return null;
+
+		Registration registration = forms.remove(new IdentityKey(iUserObject));
+		if (registration == null)
+			return null;
+		unindex(registration);
+		undisplay(iSession, registration.form);
+		return registration.form;
+	}
+
+	/**
+	 * Track the form displayed in a screen area of the session, replacing the one displayed before in the same area. Popups are
+	 * tracked as an area too, so only the last popup shown is kept: the ones below it are still in the flow history of the area.
+	 */
+	public void setDisplayed(SessionInfo iSession, String iArea, ViewComponent iForm) {
+		if (iSession == null || iArea == null || iForm == null)
+			return;
+
+		ConcurrentMap<String, ViewComponent> areas = displayed.get(iSession);
+		if (areas == null) {
+			areas = new ConcurrentHashMap<String, ViewComponent>();
+			ConcurrentMap<String, ViewComponent> current = displayed.putIfAbsent(iSession, areas);
+			if (current != null)
+				areas = current;
+		}
+		areas.put(iArea, iForm);
+	}
+
+	/**
+	 * Return the forms displayed in the screen areas and in the popups of the session, empty if none.
+	 */
+	public Collection<ViewComponent> getDisplayed(Object iSession) {
+		Map<String, ViewComponent> areas = iSession != null ? displayed.get(iSession) : null;
+		if (areas == null)
+			return new ArrayList<ViewComponent>();
+		return areas.values();
+	}
+
+	protected void undisplay(Object iSession, ViewComponent iForm) {
+		Map<String, ViewComponent> areas = displayed.get(iSession);
+		if (areas != null)
+			areas.values().removeAll(Collections.singleton(iForm));
+	}
+
+	public ViewComponent get(Object iSession, Object iUserObject) {
+		Map<IdentityKey, Registration> forms = findSessionForms(iSession);
+		if (forms == null)
+			return null;
+		Registration registration = forms.get(new IdentityKey(iUserObject));
+		if (registration == null)
+			return null;
+		registration.lastAccess = System.currentTimeMillis();
+		return registration.form;
+	}
+
+	/**
+	 * Return the associations of the session, empty if none.
+	 */
+	protected Collection<Registration> getRegistrations(Object iSession) {
+		Map<IdentityKey, Registration> forms = findSessionForms(iSession);
+		if (forms == null)
+			return new ArrayList<Registration>();
+		return forms.values();
+	}
+
+	/**
+	 * Return the sessions that have at least one association.
+	 */
+	public Collection<SessionInfo> getSessions() {
+		return sessions.keySet();
+	}
+
+	public boolean containsSession(Object iSession) {
+		return iSession != null && sessions.containsKey(iSession);
+	}
+
+	/**
+	 * Return the forms of the session whose SchemaObject is of the class received.
+	 * 
+	 * @return the forms found, null if the session has no forms.
+	 */
+	public List<ViewComponent> getForms(Object iSession, SchemaClass iClass) {
+		Map<IdentityKey, Registration> forms = findSessionForms(iSession);
+		if (forms == null)
+			return null;
+
+		List<ViewComponent> result = new ArrayList<ViewComponent>();
+		for (Registration registration : forms.values()) {
+			if (registration.form.getSchemaObject().getSchemaClass().equals(iClass))
+				result.add(registration.form);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the forms of all the sessions that render user objects of the class received or of a subclass. Only the classes
+	 * indexed and the forms matching are visited.
+	 */
+	public Map<SessionInfo, ViewComponent> getForms(SchemaClass iClass) {
+		Map<SessionInfo, ViewComponent> result = new HashMap<SessionInfo, ViewComponent>();
+		for (Map.Entry<SchemaClass, ConcurrentMap<Registration, Boolean>> entry : formsByClass.entrySet()) {
+			if (!entry.getKey().extendsClass(iClass))
+				continue;
+			for (Registration registration : entry.getValue().keySet())
+				result.put(registration.session, registration.form);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the number of forms of the session.
+	 */
+	public int size(Object iSession) {
+		Map<IdentityKey, Registration> forms = findSessionForms(iSession);
+		return forms != null ? forms.size() : 0;
+	}
+
+	public void clear() {
+		sessions.clear();
+		formsByClass.clear();
+		displayed.clear();
+	}
+
+	/**
+	 * Return the associations of the session without creating them. A null session, like when no session is active, has none.
+	 */
+	protected Map<IdentityKey, Registration> findSessionForms(Object iSession) {
+		if (iSession == null)
+			return null;
+		return sessions.get(iSession);
+	}
+
+	protected ConcurrentMap<IdentityKey, Registration> getSessionForms(SessionInfo iSession) {
+		ConcurrentMap<IdentityKey, Registration> forms = findSessionForms(iSession);
+		if (forms == null) {
+			forms = new ConcurrentHashMap<IdentityKey, Registration>();
+			ConcurrentMap<IdentityKey, Registration> current = sessions.putIfAbsent(iSession, forms);
+			if (current != null)
+				forms = current;
+		}
+		return forms;
+	}
+
+	protected void index(Registration iRegistration) {
+		if (iRegistration.schemaClass == null)
+			return;
+
+		ConcurrentMap<Registration, Boolean> forms = formsByClass.get(iRegistration.schemaClass);
+		if (forms == null) {
+			forms = new ConcurrentHashMap<Registration, Boolean>();
+			ConcurrentMap<Registration, Boolean> current = formsByClass.putIfAbsent(iRegistration.schemaClass, forms);
+			if (current != null)
+				forms = current;
+		}
+		forms.put(iRegistration, Boolean.TRUE);
+	}
+
+	protected void unindex(Registration iRegistration) {
+		if (iRegistration.schemaClass == null)
+			return;
+
+		Map<Registration, Boolean> forms = formsByClass.get(iRegistration.schemaClass);
+		if (forms != null)
+			forms.remove(iRegistration);
+	}
+
+	protected SchemaClass getSchemaClass(Object iUserObject) {
+		if (iUserObject == null)
+			return null;
+		try {
+			return Roma.schema().getSchemaClass(iUserObject);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Association between a user object and its form. Equality is by identity.
+	 */
+	protected static class Registration {
+		protected SessionInfo		session;
+		protected Object				userObject;
+		protected ViewComponent	form;
+		protected SchemaClass		schemaClass;
+		protected volatile long	lastAccess	= System.currentTimeMillis();
+
+		public Registration(SessionInfo iSession, Object iUserObject, ViewComponent iForm, SchemaClass iSchemaClass) {
+			session = iSession;
+			userObject = iUserObject;
+			form = iForm;
+			schemaClass = iSchemaClass;
+		}
+	}
+
+	/**
+	 * Wrapper to use the identity of an object as key of a map.
+	 */
+	protected static class IdentityKey {
+		protected Object	object;
+
+		public IdentityKey(Object iObject) {
+			object = iObject;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IdentityKey && ((IdentityKey) obj).object == object;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(object);
+		}
+	}
+}
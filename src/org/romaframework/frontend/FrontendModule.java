@@ -17,8 +17,12 @@
 package org.romaframework.frontend;
 
 import org.romaframework.core.Roma;
+import org.romaframework.core.flow.Controller;
 import org.romaframework.core.module.SelfRegistrantModule;
 import org.romaframework.core.schema.SchemaClassResolver;
+import org.romaframework.core.schema.SchemaReloadListener;
+import org.romaframework.frontend.util.BackgroundExecutor;
+import org.romaframework.frontend.util.CsvColumnPlan;
 
 public class FrontendModule extends SelfRegistrantModule {
 
@@ -30,9 +34,14 @@ public class FrontendModule extends SelfRegistrantModule {
 		// REGISTER THE APPLICATION DOMAIN AS FIRST ONE PATH
 		classResolver.addDomainPackage(FrontendModule.class.getPackage().getName());
 		classResolver.addPackage(FrontendModule.class.getPackage().getName()+".view.domain");
+
+		// DISCARD THE CACHED CSV COLUMNS ON CLASS RELOADING
+		Controller.getInstance().registerListener(SchemaReloadListener.class, CsvColumnPlan.getReloadListener());
 	}
 
 	public void shutdown() {
+		Controller.getInstance().unregisterListener(SchemaReloadListener.class, CsvColumnPlan.getReloadListener());
+		BackgroundExecutor.getInstance().shutdown();
 	}
 
 	public String moduleName() {
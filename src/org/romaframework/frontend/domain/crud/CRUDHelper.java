@@ -16,13 +16,25 @@
 
 package org.romaframework.frontend.domain.crud;
 
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
 import org.romaframework.aspect.flow.FlowAspect;
+import org.romaframework.aspect.view.feature.ViewFieldFeatures;
 import org.romaframework.core.Roma;
 import org.romaframework.core.binding.Bindable;
 import org.romaframework.core.domain.entity.ComposedEntity;
 import org.romaframework.core.factory.GenericFactory;
 import org.romaframework.core.schema.SchemaClass;
 import org.romaframework.core.schema.SchemaClassDefinition;
+import org.romaframework.core.schema.SchemaField;
+import org.romaframework.core.schema.SchemaHelper;
 import org.romaframework.core.schema.reflection.SchemaClassReflection;
 
 /**
@@ -176,4 +188,102 @@ public class CRUDHelper {
 	public static SchemaClass getCRUDFilter(Class<?> iClass) {
 		return getCRUDFilter(Roma.schema().getSchemaClass(iClass));
 	}
+
+	/**
+	 * Return the fields that identify univocally the instances of the entity class, to sort them in a stable order: the fields
+	 * annotated as PrimaryKey or Id (JDO and JPA), otherwise the "id" field, otherwise the first field annotated as Unique. Only
+	 * persistent single value fields are considered.
+	 * 
+	 * @return the key fields, null if no field can be used as key.
+	 */
+	public static String[] getKeyFields(SchemaClass iEntityClass) {
+		List<String> primaryKey = new ArrayList<String>();
+		String id = null;
+		String unique = null;
+		Iterator<SchemaField> it = iEntityClass.getFieldIterator();
+		while (it.hasNext()) {
+			SchemaField sf = it.next();
+			if (SchemaHelper.isMultiValueObject(sf) || !Roma.context().persistence().isFieldPersistent(sf))
+				continue;
+			Set<String> annotations = getFieldAnnotations(iEntityClass, sf.getName());
+			if (annotations.contains("PrimaryKey") || annotations.contains("Id"))
+				primaryKey.add(sf.getName());
+			else if ("id".equals(sf.getName()))
+				id = sf.getName();
+			else if (unique == null && annotations.contains("Unique"))
+				unique = sf.getName();
+		}
+
+		if (!primaryKey.isEmpty())
+			return primaryKey.toArray(new String[primaryKey.size()]);
+		String key = id != null ? id : unique;
+		return key != null ? new String[] { key } : null;
+	}
+
+	/**
+	 * Return a field to sort the instances of a class without key: the first field annotated as Index, otherwise the first persistent
+	 * field of a simple type. The order is stable only between instances with different values.
+	 * 
+	 * @return the field name, null if the class has no sortable field.
+	 */
+	public static String getFallbackOrderField(SchemaClass iEntityClass) {
+		String simple = null;
+		Iterator<SchemaField> it = iEntityClass.getFieldIterator();
+		while (it.hasNext()) {
+			SchemaField sf = it.next();
+			if (SchemaHelper.isMultiValueObject(sf) || !Roma.context().persistence().isFieldPersistent(sf))
+				continue;
+			if (getFieldAnnotations(iEntityClass, sf.getName()).contains("Index"))
+				return sf.getName();
+			if (simple == null && isSortableType(sf))
+				simple = sf.getName();
+		}
+		return simple;
+	}
+
+	private static boolean isSortableType(SchemaField iField) {
+		if (!(iField.getLanguageType() instanceof Class<?>))
+			return false;
+		Class<?> type = (Class<?>) iField.getLanguageType();
+		return type.isPrimitive() || type.isEnum() || Number.class.isAssignableFrom(type) || String.class.equals(type)
+				|| Date.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * Return the fields to match the text typed by the user: the persistent and visible String fields, the same searched by the
+	 * full-text filters.
+	 * 
+	 * @return the field names, null if the class has no String field.
+	 */
+	public static String[] getTextFields(SchemaClass iEntityClass) {
+		List<String> fields = new ArrayList<String>();
+		Iterator<SchemaField> it = iEntityClass.getFieldIterator();
+		while (it.hasNext()) {
+			SchemaField sf = it.next();
+			if (String.class.equals(sf.getLanguageType()) && Boolean.TRUE.equals(sf.getFeature(ViewFieldFeatures.VISIBLE))
+					&& Roma.context().persistence().isFieldPersistent(sf))
+				fields.add(sf.getName());
+		}
+		return fields.isEmpty() ? null : fields.toArray(new String[fields.size()]);
+	}
+
+	/**
+	 * Return the simple names of the annotations of the field, searched in the class hierarchy. Names are used to support JDO and JPA
+	 * without depending on them.
+	 */
+	private static Set<String> getFieldAnnotations(SchemaClass iEntityClass, String iFieldName) {
+		Set<String> result = new HashSet<String>();
+		if (!(iEntityClass.getLanguageType() instanceof Class<?>))
+			return result;
+		for (Class<?> cls = (Class<?>) iEntityClass.getLanguageType(); cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+			try {
+				Field field = cls.getDeclaredField(iFieldName);
+				for (Annotation annotation : field.getAnnotations())
+					result.add(annotation.annotationType().getSimpleName());
+				return result;
+			} catch (NoSuchFieldException e) {
+			}
+		}
+		return result;
+	}
 }
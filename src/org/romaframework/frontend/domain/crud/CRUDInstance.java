@@ -141,16 +141,18 @@ public class CRUDInstance<T> extends CRUDEntity<T> implements ViewCallback, CRUD
 	protected void saveEntity() {
 		switch (mode) {
 		case MODE_CREATE:
-			if (getSourceObject() == null)
+			if (getSourceObject() == null) {
 				setEntity(repository.create(getEntity()));
-			else
+				EntityWriteNotifier.getInstance().entitySaved(getEntity());
+			} else
 				SchemaHelper.insertElements(getSourceField(), getSourceObject(), new Object[] { entity });
 			break;
 
 		case MODE_UPDATE:
-			if (getSourceObject() == null)
+			if (getSourceObject() == null) {
 				setEntity(repository.update(getEntity()));
-			else
+				EntityWriteNotifier.getInstance().entitySaved(getEntity());
+			} else
 				SchemaHelper.insertElements(getSourceField(), getSourceObject(), new Object[] { entity });
 			break;
 
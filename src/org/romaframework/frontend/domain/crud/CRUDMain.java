@@ -17,10 +17,16 @@
 package org.romaframework.frontend.domain.crud;
 
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,12 +42,16 @@ import org.romaframework.aspect.persistence.PersistenceConstants;
 import org.romaframework.aspect.persistence.QueryByExample;
 import org.romaframework.aspect.persistence.QueryByFilter;
 import org.romaframework.aspect.persistence.QueryByFilterItem;
+import org.romaframework.aspect.persistence.QueryByFilterItemGroup;
+import org.romaframework.aspect.persistence.QueryByFilterOrder;
 import org.romaframework.aspect.persistence.QueryByText;
 import org.romaframework.aspect.persistence.annotation.Persistence;
 import org.romaframework.aspect.reporting.annotation.ReportingField;
 import org.romaframework.aspect.security.Secure;
+import org.romaframework.aspect.session.SessionInfo;
 import org.romaframework.aspect.view.ViewCallback;
 import org.romaframework.aspect.view.ViewConstants;
+import org.romaframework.aspect.view.WindowedDataProvider;
 import org.romaframework.aspect.view.annotation.ViewAction;
 import org.romaframework.aspect.view.annotation.ViewField;
 import org.romaframework.aspect.view.feature.ViewActionFeatures;
@@ -56,7 +66,6 @@ import org.romaframework.core.flow.Controller;
 import org.romaframework.core.repository.GenericRepository;
 import org.romaframework.core.repository.PersistenceAspectRepositorySingleton;
 import org.romaframework.core.schema.SchemaClass;
-import org.romaframework.core.schema.SchemaField;
 import org.romaframework.core.schema.SchemaHelper;
 import org.romaframework.frontend.domain.message.Message;
 import org.romaframework.frontend.domain.message.MessageOk;
@@ -64,6 +73,7 @@ import org.romaframework.frontend.domain.message.MessageResponseListener;
 import org.romaframework.frontend.domain.message.MessageText;
 import org.romaframework.frontend.domain.message.MessageYesNo;
 import org.romaframework.frontend.domain.reporting.ReportGenerator;
+import org.romaframework.frontend.util.BackgroundExecutor;
 import org.romaframework.frontend.util.RomaCsvGenerator;
 
 /**
@@ -78,7 +88,8 @@ import org.romaframework.frontend.util.RomaCsvGenerator;
 @CoreClass(orderFields = "filter paging result", orderActions = "search create read update delete report selectAll deselectAll")
 @LoggingClass(mode = LoggingConstants.MODE_DB)
 @SuppressWarnings("unchecked")
-public abstract class CRUDMain<T> extends SelectableInstance implements PagingListener, MessageResponseListener, Refreshable, ViewCallback {
+public abstract class CRUDMain<T> extends SelectableInstance implements KeysetPagingListener, MessageResponseListener, Refreshable, ViewCallback,
+		WindowedDataProvider<Object> {
 
 	@ReportingField(visible = AnnotationConstants.FALSE)
 	@ViewField(label = "", render = ViewConstants.RENDER_OBJECTEMBEDDED, position = "form://paging")
@@ -86,6 +97,12 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 
 	protected org.romaframework.aspect.persistence.Query	queryRequest;
 
+	/**
+	 * Sort fields of the current query used by the keyset paging, null if the order is not known.
+	 */
+	protected String[]																		keysetFields;
+	protected String[]																		keysetOrders;
+
 	@ViewField(visible = AnnotationConstants.FALSE)
 	protected GenericRepository<T>												repository;
 
@@ -103,6 +120,25 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 	protected boolean																			handleDoubleClick			= true;
 	private static final int															DOUBLE_CLICK_TIMEOUT	= 1000;
 
+	/**
+	 * Default time in milliseconds over which a query is logged as slow.
+	 */
+	public static final long															DEF_SLOW_QUERY_TIME		= 1000;
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected long																				slowQueryTime					= DEF_SLOW_QUERY_TIME;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected boolean																			asyncCount						= false;
+	protected Future<Long>																countTask;
+	protected volatile int																countGeneration				= 0;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected PageCache																		pageCache;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected boolean																			projection						= false;
+	protected EntityProjection<T>													entityProjection;
+
 	protected CRUDMain(Class<? extends ComposedEntity<?>> iListClass, Class<? extends ComposedEntity<?>> iCreateClass, Class<? extends ComposedEntity<?>> iReadClass,
 			Class<? extends ComposedEntity<?>> iEditClass) {
 		this(null, iListClass, iCreateClass, iReadClass, iEditClass);
@@ -145,6 +181,7 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 	public abstract void setResult(Object iValue);
 
 	public void onDispose() {
+		cancelCount();
 		Controller.getInstance().unregisterListener(ClassLoaderListener.class, this);
 	}
 
@@ -157,8 +194,161 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 		if (queryRequest == null) {
 			return;
 		}
-		queryRequest.setRangeFrom(iFrom, iTo);
-		executeQuery();
+		checkPageCache();
+		List<?> page = pageCache != null ? pageCache.get(queryRequest, iFrom, iTo) : null;
+		if (page != null) {
+			setResult(page);
+			Roma.fieldChanged(this, "result");
+		} else {
+			synchronized (queryRequest) {
+				queryRequest.setRangeFrom(iFrom, iTo);
+				executeQuery();
+			}
+			if (pageCache != null)
+				pageCache.put(queryRequest, iFrom, iTo, getResult());
+		}
+		prefetchPage(iTo, iTo + (iTo - iFrom));
+	}
+
+	/**
+	 * Load in background the page in the range received, if the page cache is enabled. The page is loaded on a copy of the query,
+	 * since the request thread keeps using the original one.
+	 */
+	protected void prefetchPage(final int iFrom, final int iTo) {
+		if (pageCache == null || paging == null || iFrom >= paging.getTotalItems())
+			return;
+
+		final org.romaframework.aspect.persistence.Query copy;
+		synchronized (queryRequest) {
+			copy = QueryHelper.copy(queryRequest);
+		}
+		if (copy == null)
+			// QUERY NOT COPYABLE: DON'T SHARE IT WITH THE BACKGROUND THREAD
+			return;
+
+		pageCache.prefetch(queryRequest, iFrom, iTo, new Callable<List<?>>() {
+			public List<?> call() throws Exception {
+				copy.setRangeFrom(iFrom, iTo);
+				return createListableRows(findByCriteria(copy));
+			}
+		});
+	}
+
+	/**
+	 * Execute the query in the range received returning the listable objects, without changing the result displayed nor the range
+	 * of the query.
+	 */
+	protected List<?> queryRange(org.romaframework.aspect.persistence.Query iQuery, int iFrom, int iTo) {
+		List<T> entities;
+		org.romaframework.aspect.persistence.Query copy;
+		synchronized (iQuery) {
+			copy = QueryHelper.copy(iQuery);
+			if (copy == null) {
+				int rangeFrom = iQuery.getRangeFrom();
+				int rangeTo = iQuery.getRangeTo();
+				try {
+					iQuery.setRangeFrom(iFrom, iTo);
+					return createListableRows(findByCriteria(iQuery));
+				} finally {
+					iQuery.setRangeFrom(rangeFrom, rangeTo);
+				}
+			}
+		}
+		copy.setRangeFrom(iFrom, iTo);
+		entities = findByCriteria(copy);
+		return createListableRows(entities);
+	}
+
+	protected List<?> createListableRows(List<T> iEntities) {
+		try {
+			return EntityHelper.createComposedEntityList(iEntities, listClass);
+		} catch (Exception e) {
+			throw new CRUDException("Error on creating wrapper class for result. Class: " + listClass, e);
+		}
+	}
+
+	public boolean providesRows(String iFieldName) {
+		return "result".equals(iFieldName);
+	}
+
+	public int size() {
+		if (queryRequest == null)
+			return 0;
+		if (paging == null || isResultComplete())
+			return getResult().size();
+		return paging.getTotalItems();
+	}
+
+	/**
+	 * Return the listable objects in the range of the current result, reading the pages cached if enabled.
+	 */
+	public List<Object> fetch(int iFrom, int iCount) {
+		List<Object> rows = new ArrayList<Object>();
+		if (queryRequest == null || iCount <= 0)
+			return rows;
+
+		if (isResultComplete()) {
+			List<? extends Object> result = getResult();
+			if (iFrom < result.size())
+				rows.addAll(result.subList(iFrom, Math.min(iFrom + iCount, result.size())));
+			return rows;
+		}
+
+		int to = iFrom + iCount;
+		checkPageCache();
+		List<?> page = pageCache != null ? pageCache.get(queryRequest, iFrom, to) : null;
+		if (page == null) {
+			page = queryRange(queryRequest, iFrom, to);
+			if (pageCache != null)
+				pageCache.put(queryRequest, iFrom, to, page);
+		}
+		rows.addAll(page);
+		return rows;
+	}
+
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void invalidate() {
+		invalidatePageCache();
+	}
+
+	/**
+	 * Remove the cached pages if any entity of the class searched was written after they were loaded, by this CRUD or any other one.
+	 */
+	protected void checkPageCache() {
+		if (pageCache != null && queryRequest != null)
+			pageCache.checkVersion(EntityWriteNotifier.getInstance().getVersion(queryRequest.getCandidateClass()));
+	}
+
+	/**
+	 * Remove all the cached pages. Call it when the entities displayed change.
+	 */
+	protected void invalidatePageCache() {
+		if (pageCache != null)
+			pageCache.clear();
+	}
+
+	/**
+	 * Return the cache of the pages already loaded, null if disabled.
+	 */
+	public PageCache getPageCache() {
+		return pageCache;
+	}
+
+	/**
+	 * Enable the cache of the pages already loaded and the prefetch of the next page passing a PageCache instance, or disable it
+	 * passing null.
+	 */
+	public void setPageCache(PageCache pageCache) {
+		this.pageCache = pageCache;
+		if (pageCache != null)
+			pageCache.setEvictionListener(new PageCache.EvictionListener() {
+				public void onPageEvicted(List<?> iPage) {
+					// THE OIDS OF THE PROJECTED ROWS ARE KEPT ONLY WHILE CACHED OR DISPLAYED
+					EntityProjection<T> projection = entityProjection;
+					if (projection != null)
+						projection.release(iPage, getResult());
+				}
+			});
 	}
 
 	public CRUDPaging getPaging() {
@@ -175,17 +365,29 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 	}
 
 	/**
-	 * Generate a report CSV for the current view using the RomaCsvGenerator.
+	 * Generate a report CSV for the current view using the RomaCsvGenerator. If there is no selection all the results of the
+	 * current query are exported, loading them in chunks while the file is downloaded.
 	 */
 	@ViewAction(visible = AnnotationConstants.TRUE)
 	public void exportToCsv() {
+		String fileName = ((ComposedEntity<?>) getFilter()).getEntity().getClass().getSimpleName();
 		if (getSelection() != null && getSelection().length > 0) {
-			RomaCsvGenerator.generateCsv(getSelection(), ((ComposedEntity<?>) getFilter()).getEntity().getClass().getSimpleName());
+			RomaCsvGenerator.generateCsv(Arrays.asList(getSelection()).iterator(), null, fileName, getExportCharset());
+		} else if (queryRequest != null) {
+			RomaCsvGenerator.generateCsv(new QueryIterator<T>(repository, queryRequest, listClass, QueryIterator.DEF_CHUNK_SIZE), listClass, fileName,
+					getExportCharset());
 		} else {
-			RomaCsvGenerator.generateCsv(getResult(), ((ComposedEntity<?>) getFilter()).getEntity().getClass().getSimpleName());
+			RomaCsvGenerator.generateCsv(getResult().iterator(), null, fileName, getExportCharset());
 		}
 	}
 
+	/**
+	 * Return the charset used to export the CSV. Overwrite it to change the default one.
+	 */
+	protected Charset getExportCharset() {
+		return Charset.defaultCharset();
+	}
+
 	/**
 	 * By default search uses the "Search By Example" pattern by invoking the searchByExample() method. Overwrite this to use the
 	 * searchByQuery() or any other mode.
@@ -243,6 +445,8 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 	 */
 	@ViewAction(visible = AnnotationConstants.FALSE)
 	public void searchByFilter(QueryByFilter iQueryFilter) {
+		// ORDER DEFINED BY THE CALLER: CANNOT PAGE BY KEY
+		setKeysetOrder(null, null);
 		queryRequest = iQueryFilter;
 		queryRequest.setStrategy(PersistenceAspect.STRATEGY_DETACHING);
 		queryRequest.setMode(SEARCH_MODE_LOADING);
@@ -258,6 +462,7 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 	@ViewAction(visible = AnnotationConstants.FALSE)
 	public void searchByText(String iText) {
 		Object filter = ((ComposedEntity<?>) getFilter()).getEntity();
+		setKeysetOrder(null, null);
 		queryRequest = new QueryByText(filter.getClass(), iText);
 		queryRequest.setStrategy(PersistenceAspect.STRATEGY_DETACHING);
 		queryRequest.setMode(SEARCH_MODE_LOADING);
@@ -271,6 +476,7 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 	 */
 	@ViewAction(visible = AnnotationConstants.FALSE)
 	public void searchByText(QueryByText iQueryText) {
+		setKeysetOrder(null, null);
 		queryRequest = iQueryText;
 		queryRequest.setStrategy(PersistenceAspect.STRATEGY_DETACHING);
 		queryRequest.setMode(SEARCH_MODE_LOADING);
@@ -278,15 +484,32 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 	}
 
 	protected void executePagingQuery() {
+		cancelCount();
+		invalidatePageCache();
+		if (entityProjection != null)
+			entityProjection.clear();
 		if (paging != null)
 			queryRequest.setRangeFrom(0, paging.getPageElements());
-		int count = (int) repository.countByCriteria(queryRequest);
-		executeQuery();
 
-		if (paging != null) {
-			paging.setTotalItems(count);
+		if (asyncCount && paging != null) {
+			// SHOW THE FIRST PAGE NOW AND COUNT IN BACKGROUND
+			executeQuery();
+			int loaded = getResult() != null ? getResult().size() : 0;
+			paging.setTotalItemsEstimate(loaded, loaded >= paging.getPageElements());
 			paging.setCurrentPage(1);
 			Roma.fieldChanged(this, "paging");
+			executeCountInBackground();
+			cacheFirstPage();
+		} else {
+			int count = (int) repository.countByCriteria(queryRequest);
+			executeQuery();
+
+			if (paging != null) {
+				paging.setTotalItems(count);
+				paging.setCurrentPage(1);
+				Roma.fieldChanged(this, "paging");
+				cacheFirstPage();
+			}
 		}
 
 		if (getResult().size() == 1) {
@@ -296,14 +519,305 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 		}
 	}
 
+	private void cacheFirstPage() {
+		if (pageCache == null)
+			return;
+		pageCache.put(queryRequest, 0, paging.getPageElements(), getResult());
+		prefetchPage(paging.getPageElements(), paging.getPageElements() * 2);
+	}
+
+	/**
+	 * Count the items of the current query in the BackgroundExecutor, on a copy of the query and with its own persistence context.
+	 * The count is handed to the paging, that applies it in the request thread; when it arrives the session is asked to refresh the
+	 * paging, unless another search was started in the meanwhile.
+	 */
+	protected void executeCountInBackground() {
+		final int generation = ++countGeneration;
+		final SessionInfo session = Roma.session().getActiveSessionInfo();
+		final org.romaframework.aspect.persistence.Query original = queryRequest;
+		final org.romaframework.aspect.persistence.Query copy;
+		synchronized (original) {
+			copy = QueryHelper.copy(original);
+		}
+		Callable<Long> count = new Callable<Long>() {
+			public Long call() throws Exception {
+				if (copy != null)
+					return repository.countByCriteria(copy);
+				synchronized (original) {
+					return repository.countByCriteria(original);
+				}
+			}
+		};
+		FutureTask<Long> task = new FutureTask<Long>(BackgroundExecutor.getInstance().inContext(count)) {
+			@Override
+			protected void done() {
+				// COMPLETED OR FAILED: THE PAGING APPLIES IT WHEN THE SESSION REFRESHES IT
+				if (!isCancelled() && generation == countGeneration)
+					paging.refreshFromBackground(session);
+			}
+		};
+		countTask = task;
+		paging.setPendingTotalItems(task);
+		BackgroundExecutor.getInstance().getExecutor().execute(task);
+	}
+
+	/**
+	 * Cancel the count in progress, if any.
+	 */
+	protected void cancelCount() {
+		++countGeneration;
+		if (countTask != null) {
+			countTask.cancel(true);
+			countTask = null;
+		}
+	}
+
+	/**
+	 * Tell if the count of items is executed in background. If true the first page is displayed before the count is known.
+	 */
+	public boolean isAsyncCount() {
+		return asyncCount;
+	}
+
+	public void setAsyncCount(boolean asyncCount) {
+		this.asyncCount = asyncCount;
+	}
+
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void loadPageAfter(Object[] iKey, int iElements) {
+		executeKeysetQuery(iKey, true, iElements);
+	}
+
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void loadPageBefore(Object[] iKey, int iElements) {
+		executeKeysetQuery(iKey, false, iElements);
+	}
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public boolean isKeysetAvailable() {
+		return keysetFields != null && getKeysetFilter() != null;
+	}
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public Object[] getFirstRowKey() {
+		List<? extends Object> result = getResult();
+		if (keysetFields == null || result == null || result.isEmpty())
+			return null;
+		return getRowKey(result.get(0));
+	}
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public Object[] getLastRowKey() {
+		List<? extends Object> result = getResult();
+		if (keysetFields == null || result == null || result.isEmpty())
+			return null;
+		return getRowKey(result.get(result.size() - 1));
+	}
+
+	/**
+	 * Set the sort fields used by the keyset paging. Overwrite addDefaultOrder() calling this method with the orders added, or
+	 * pass null to page by offset only. The sort fields should identify a row univocally, otherwise rows with the same key across
+	 * two pages can be skipped.
+	 * 
+	 * @param iFields
+	 *          the fields in the same order of the query, null to disable the keyset paging.
+	 * @param iOrders
+	 *          QueryByFilter.ORDER_ASC or QueryByFilter.ORDER_DESC for each field, null for all ascending. Missing orders are
+	 *          ascending.
+	 */
+	protected void setKeysetOrder(String[] iFields, String[] iOrders) {
+		keysetFields = iFields;
+		if (iFields != null && (iOrders == null || iOrders.length != iFields.length)) {
+			// MISSING ORDERS ARE ASCENDING, EXCEEDING ONES ARE IGNORED
+			String[] orders = new String[iFields.length];
+			for (int i = 0; i < orders.length; ++i)
+				orders[i] = iOrders != null && i < iOrders.length ? iOrders[i] : QueryByFilter.ORDER_ASC;
+			iOrders = orders;
+		}
+		keysetOrders = iOrders;
+	}
+
+	/**
+	 * Return the filter where the keyset predicates and orders are applied.
+	 */
+	protected QueryByFilter getKeysetFilter() {
+		if (queryRequest instanceof QueryByExample)
+			return ((QueryByExample) queryRequest).getAdditionalFilter();
+		if (queryRequest instanceof QueryByFilter)
+			return (QueryByFilter) queryRequest;
+		return null;
+	}
+
+	protected Object[] getRowKey(Object iRow) {
+		Object entity = iRow instanceof ComposedEntity<?> ? ((ComposedEntity<?>) iRow).getEntity() : iRow;
+		if (entity == null)
+			return null;
+
+		Object[] key = new Object[keysetFields.length];
+		for (int i = 0; i < keysetFields.length; ++i) {
+			key[i] = SchemaHelper.getFieldValue(entity, keysetFields[i]);
+			if (key[i] == null)
+				// NULL VALUES CANNOT BE COMPARED: USE THE OFFSET
+				return null;
+		}
+		return key;
+	}
+
+	/**
+	 * Execute the current query adding the predicate "after key" or "before key". Backward pages are read in reverse order and
+	 * reverted in memory. The filter and the range of the query are restored at the end.
+	 * 
+	 * @param iKey
+	 *          the sort key values to start from, null to start from the end of the result (backward only).
+	 * @param iForward
+	 *          true to load the elements after the key, false to load the elements before it.
+	 * @param iElements
+	 *          the number of elements to load.
+	 */
+	protected void executeKeysetQuery(Object[] iKey, boolean iForward, int iElements) {
+		QueryByFilter filter = getKeysetFilter();
+		synchronized (queryRequest) {
+			// ORDERS ADDED BY SUBCLASSES OR COLUMN SORTS MUST SURVIVE THE KEYSET QUERY
+			List<QueryByFilterItem> items = QueryHelper.getItems(filter);
+			List<QueryByFilterOrder> orders = QueryHelper.getOrders(filter);
+			int rangeFrom = queryRequest.getRangeFrom();
+			int rangeTo = queryRequest.getRangeTo();
+			try {
+				filter.clear();
+				filter.setItems(new ArrayList<QueryByFilterItem>(items));
+				if (iKey != null)
+					filter.addItem(createKeysetPredicate(iKey, iForward));
+				addKeysetOrder(filter, !iForward);
+
+				queryRequest.setRangeFrom(0, iElements);
+				List<T> page = findByCriteria(queryRequest);
+				if (!iForward) {
+					page = new ArrayList<T>(page);
+					Collections.reverse(page);
+				}
+				fillResult(page);
+			} finally {
+				QueryHelper.restore(filter, items, orders);
+				queryRequest.setRangeFrom(rangeFrom, rangeTo);
+			}
+		}
+	}
+
+	/**
+	 * Create the predicate (k1 > v1) OR (k1 = v1 AND k2 > v2) OR ... following the direction of every sort field.
+	 */
+	protected QueryByFilterItemGroup createKeysetPredicate(Object[] iKey, boolean iForward) {
+		QueryByFilterItemGroup predicate = new QueryByFilterItemGroup(QueryByFilter.PREDICATE_OR);
+		for (int i = 0; i < keysetFields.length; ++i) {
+			QueryByFilterItemGroup term = new QueryByFilterItemGroup(QueryByFilter.PREDICATE_AND);
+			for (int k = 0; k < i; ++k)
+				term.addItem(keysetFields[k], QueryByFilter.FIELD_EQUALS, iKey[k]);
+
+			boolean ascending = !QueryByFilter.ORDER_DESC.equals(keysetOrders[i]);
+			term.addItem(keysetFields[i], ascending == iForward ? QueryByFilter.FIELD_MAJOR : QueryByFilter.FIELD_MINOR, iKey[i]);
+			predicate.addItem(term);
+		}
+		return predicate;
+	}
+
+	protected void addKeysetOrder(QueryByFilter iFilter, boolean iReverse) {
+		for (int i = 0; i < keysetFields.length; ++i) {
+			boolean ascending = !QueryByFilter.ORDER_DESC.equals(keysetOrders[i]);
+			iFilter.addOrder(keysetFields[i], ascending != iReverse ? QueryByFilter.ORDER_ASC : QueryByFilter.ORDER_DESC);
+		}
+	}
+
 	/**
 	 * Delegate the execution to the repository created and fill the result in own list.
 	 */
 	protected void executeQuery() {
-		List<T> repositoryResult = repository.findByCriteria(queryRequest);
+		List<T> repositoryResult = findByCriteria(queryRequest);
 		fillResult(repositoryResult);
 	}
 
+	/**
+	 * Execute the query through the repository, or reading only the fields displayed if the projection is enabled.
+	 */
+	protected List<T> findByCriteria(org.romaframework.aspect.persistence.Query iQuery) {
+		if (!isProjectionEnabled()) {
+			long start = System.currentTimeMillis();
+			List<T> result = repository.findByCriteria(iQuery);
+			checkSlowQuery(iQuery, System.currentTimeMillis() - start);
+			return result;
+		}
+
+		// THE SORT KEYS ARE NEEDED BY THE KEYSET PAGING
+		EntityProjection<T> projection = getEntityProjection();
+		String[] queryFields = projection.getQueryFields(keysetFields);
+		long start = System.currentTimeMillis();
+		Map<String, Object[]> values = projection.execute(iQuery, queryFields);
+		checkSlowQuery(iQuery, System.currentTimeMillis() - start);
+		return projection.createRows(queryFields, values);
+	}
+
+	/**
+	 * Log a sorted query slower than slowQueryTime, suggesting to index its sort fields. Unsorted queries are not logged since their
+	 * time doesn't depend on the sort key.
+	 * 
+	 * @param iElapsed
+	 *          time spent by the datastore in milliseconds
+	 */
+	protected void checkSlowQuery(org.romaframework.aspect.persistence.Query iQuery, long iElapsed) {
+		if (slowQueryTime <= 0 || iElapsed <= slowQueryTime || !log.isWarnEnabled())
+			return;
+		List<QueryByFilterOrder> orders = QueryHelper.getOrders(iQuery);
+		if (orders.isEmpty())
+			return;
+
+		StringBuilder fields = new StringBuilder();
+		for (QueryByFilterOrder order : orders) {
+			if (fields.length() > 0)
+				fields.append(", ");
+			fields.append(order.getFieldName()).append(' ').append(order.getFieldOrder());
+		}
+		log.warn("[CRUDMain.checkSlowQuery] Slow query on " + getClass().getSimpleName() + ": " + iElapsed + "ms sorting by " + fields
+				+ ". Check the fields are indexed or declare an indexed sort key with @CRUDOrder");
+	}
+
+	/**
+	 * Time in milliseconds over which a query is logged as slow, 0 to disable the log.
+	 */
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public long getSlowQueryTime() {
+		return slowQueryTime;
+	}
+
+	public void setSlowQueryTime(long slowQueryTime) {
+		this.slowQueryTime = slowQueryTime;
+	}
+
+	protected boolean isProjectionEnabled() {
+		return projection && EntityProjection.isAvailable();
+	}
+
+	protected EntityProjection<T> getEntityProjection() {
+		if (entityProjection == null)
+			entityProjection = new EntityProjection<T>(listClass);
+		return entityProjection;
+	}
+
+	/**
+	 * Tell if the result is loaded reading only the fields displayed by the listable class.
+	 */
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public boolean isProjection() {
+		return projection;
+	}
+
+	/**
+	 * Enable the load of the result reading only the fields displayed by the listable class, plus the sort keys. The whole entity is
+	 * loaded only on read, update and delete. Requires a ProjectionQueryExecutor component, otherwise the entities are loaded as
+	 * usual. The listable class must display only the fields of the entity, not values computed from other fields.
+	 */
+	public void setProjection(boolean projection) {
+		this.projection = projection;
+	}
+
 	/*
 	 * Fill CRUD result with the query result
 	 */
@@ -316,6 +830,9 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 			log.error("[CRUDMain.fillResult] Error on creating wrapper class for result. Class: " + listClass, e);
 		}
 
+		if (pageCache == null && entityProjection != null)
+			// NO CACHE TO RELEASE THEM ON EVICTION: FORGET THE ROWS OF THE PAGE REPLACED
+			entityProjection.release(getResult(), tempResult);
 		setResult(tempResult);
 		Roma.fieldChanged(this, "result");
 	}
@@ -407,7 +924,13 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 	}
 
 	protected Object loadObjectDetails(Object iObj) {
-		Object obj = repository.load(((ComposedEntity<T>) iObj).getEntity(), PersistenceAspect.FULL_MODE_LOADING, PersistenceAspect.STRATEGY_DETACHING);
+		Object entity = ((ComposedEntity<T>) iObj).getEntity();
+		Object obj;
+		if (entityProjection != null && entityProjection.isRow(entity))
+			// LIGHTWEIGHT ROW: LOAD THE WHOLE ENTITY
+			obj = entityProjection.load(entity);
+		else
+			obj = repository.load((T) entity, PersistenceAspect.FULL_MODE_LOADING, PersistenceAspect.STRATEGY_DETACHING);
 
 		if (obj == null) {
 			throw new ConfigurationException("Cannot load object. Check the PersistenceAspect configuration and assure the class you're using is detachable");
@@ -481,10 +1004,15 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 					selectedInstance = ((ComposedEntity<?>) selectedInstance).getEntity();
 				}
 
+				if (entityProjection != null)
+					selectedInstance = entityProjection.load(selectedInstance);
+
 				selectedInstances.add(selectedInstance);
 			}
 
 			executeDelete(selectedInstances);
+			for (Object deleted : selectedInstances)
+				EntityWriteNotifier.getInstance().entityDeleted(deleted);
 
 			// RE-EXECUTE THE QUERY TO UPDATE VIEW
 			search();
@@ -501,6 +1029,7 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 	protected void executeDelete(List<Object> selectedInstances) {
 		// DELETE THE PERSISTENT OBJECTS
 		repository.delete(selectedInstances.toArray());
+		invalidatePageCache();
 	}
 
 	/**
@@ -639,26 +1168,111 @@ public abstract class CRUDMain<T> extends SelectableInstance implements PagingLi
 				extendedFilter.merge(additionalFilter);
 			}
 		}
+		setKeysetOrder(null, null);
 		addDefaultOrder(extendedFilter);
 		return extendedFilter;
 	}
 
+	/**
+	 * Add the default sort key to the query and use it for the keyset paging. The key is taken from the @CRUDOrder annotation of the
+	 * CRUD or of the entity, otherwise from getDefaultOrderFields(). Without a key the query is sorted by the field returned by
+	 * CRUDHelper.getFallbackOrderField() and paged by offset.
+	 */
 	protected void addDefaultOrder(QueryByFilter addFilter) {
 		SchemaClass entityClass = (SchemaClass) listClass.getField(ComposedEntity.NAME).getType().getSchemaClass();
-		Iterator<SchemaField> it = entityClass.getFieldIterator();
-		while (it.hasNext()) {
-			SchemaField sf = it.next();
-			if (!SchemaHelper.isMultiValueObject(sf) && Roma.context().persistence().isFieldPersistent(sf))
-				addFilter.addOrder(sf.getName());
+		String[] fields;
+		String[] orders = null;
+
+		CRUDOrder order = getClass().getAnnotation(CRUDOrder.class);
+		if (order == null && entityClass.getLanguageType() instanceof Class<?>)
+			order = ((Class<?>) entityClass.getLanguageType()).getAnnotation(CRUDOrder.class);
+		if (order != null) {
+			fields = order.fields();
+			if (order.orders().length > 0)
+				orders = order.orders();
+			if (orders != null && orders.length != fields.length)
+				log.warn("[CRUDMain.addDefaultOrder] @CRUDOrder of " + getClass().getSimpleName() + " declares " + orders.length
+						+ " orders for " + fields.length + " fields: the missing ones are ascending, the exceeding ones are ignored");
+		} else
+			fields = getDefaultOrderFields(entityClass);
+
+		if (fields == null || fields.length == 0) {
+			// NO KEY: SORT BY ANY FIELD TO KEEP THE PAGES BY OFFSET AS STABLE AS POSSIBLE
+			setKeysetOrder(null, null);
+			String fallback = CRUDHelper.getFallbackOrderField(entityClass);
+			if (fallback != null)
+				addFilter.addOrder(fallback, QueryByFilter.ORDER_ASC);
+			return;
 		}
+
+		setKeysetOrder(fields, orders);
+		for (int i = 0; i < keysetFields.length; ++i)
+			addFilter.addOrder(keysetFields[i], keysetOrders[i]);
 	}
 
+	/**
+	 * Return the default sort key when no @CRUDOrder annotation is declared. Overwrite it to sort by other fields. By default it's
+	 * the key of the entity returned by CRUDHelper.getKeyFields(): the PrimaryKey or Id fields, otherwise the "id" field, otherwise
+	 * a Unique field. Return null if the entity has no key.
+	 */
+	protected String[] getDefaultOrderFields(SchemaClass iEntityClass) {
+		return CRUDHelper.getKeyFields(iEntityClass);
+	}
+
+	/**
+	 * Sort the result by a column. If the whole result is displayed it's sorted in memory, otherwise the query is executed again with
+	 * the new order reusing the count already known.
+	 */
 	public void onResultSort(String field, String mode) {
+		boolean ascending = "true".equals(mode);
+		QueryByFilter filter = getKeysetFilter();
+		if (filter != null) {
+			// KEEP THE ORDER FOR THE NEXT PAGES AND REFRESHES
+			List<QueryByFilterItem> items = new ArrayList<QueryByFilterItem>(filter.getItems());
+			filter.clear();
+			filter.setItems(items);
+			filter.addOrder(field, ascending ? QueryByFilter.ORDER_ASC : QueryByFilter.ORDER_DESC);
+		}
+		// A SINGLE COLUMN CAN'T IDENTIFY THE ROW: PAGE BY OFFSET
+		setKeysetOrder(null, null);
+
+		if (isResultComplete()) {
+			invalidatePageCache();
+			setResult(ColumnSort.sort(getResult(), field, ascending));
+			Roma.fieldChanged(this, "result");
+		} else if (filter != null)
+			executeSortedQuery();
+	}
 
-		List<QueryByFilterItem> items = new ArrayList<QueryByFilterItem>(((QueryByExample) queryRequest).getAdditionalFilter().getItems());
-		((QueryByExample) queryRequest).getAdditionalFilter().clear();
-		((QueryByExample) queryRequest).getAdditionalFilter().setItems(items);
-		((QueryByExample) queryRequest).getAdditionalFilter().addOrder(field, "true".equals(mode) ? QueryByFilter.ORDER_ASC : QueryByFilter.ORDER_DESC);
-		executePagingQuery();
+	/**
+	 * Tell if the result contains all the items of the query, so it can be sorted in memory.
+	 */
+	protected boolean isResultComplete() {
+		List<? extends Object> result = getResult();
+		if (result == null || queryRequest == null)
+			return false;
+		if (paging == null)
+			return true;
+		return !paging.isTotalItemsEstimated() && result.size() >= paging.getTotalItems();
+	}
+
+	/**
+	 * Load the first page of the current query after a change of the order. The count is not executed again since the order cannot
+	 * change it.
+	 */
+	protected void executeSortedQuery() {
+		invalidatePageCache();
+		if (entityProjection != null)
+			entityProjection.clear();
+
+		if (paging != null && paging.getCurrentPage() != 1 && paging.isPagingEnabled())
+			// LOADS THE FIRST PAGE
+			paging.setCurrentPage(1);
+		else {
+			if (paging != null)
+				queryRequest.setRangeFrom(0, paging.getPageElements());
+			executeQuery();
+		}
+		setSelection(null);
 	}
 }
\ No newline at end of file
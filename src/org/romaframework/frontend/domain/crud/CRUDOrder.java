@@ -0,0 +1,44 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Default sort key of the CRUD result. Put it on the CRUDMain subclass or on the entity class. The fields should be indexed and
+ * should identify a row univocally, since they are used also by the keyset paging.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CRUDOrder {
+
+	/**
+	 * Fields to sort by, in order of priority.
+	 */
+	String[] fields();
+
+	/**
+	 * QueryByFilter.ORDER_ASC or QueryByFilter.ORDER_DESC for each field. Empty for all ascending.
+	 */
+	String[] orders() default {};
+}
@@ -16,6 +16,10 @@
 
 package org.romaframework.frontend.domain.crud;
 
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.romaframework.aspect.core.annotation.AnnotationConstants;
 import org.romaframework.aspect.core.annotation.CoreClass;
 import org.romaframework.aspect.flow.annotation.FlowAction;
@@ -23,12 +27,16 @@ import org.romaframework.aspect.flow.feature.FlowActionFeatures;
 import org.romaframework.aspect.i18n.I18NType;
 import org.romaframework.aspect.persistence.PersistenceConstants;
 import org.romaframework.aspect.persistence.annotation.Persistence;
+import org.romaframework.aspect.session.SessionInfo;
+import org.romaframework.aspect.view.ViewAspect;
 import org.romaframework.aspect.view.ViewCallback;
 import org.romaframework.aspect.view.annotation.ViewAction;
 import org.romaframework.aspect.view.annotation.ViewClass;
 import org.romaframework.aspect.view.annotation.ViewField;
+import org.romaframework.aspect.view.command.impl.RefreshViewCommand;
 import org.romaframework.aspect.view.feature.ViewActionFeatures;
 import org.romaframework.aspect.view.feature.ViewFieldFeatures;
+import org.romaframework.aspect.view.form.ViewComponent;
 import org.romaframework.core.Roma;
 
 /**
@@ -36,15 +44,20 @@ import org.romaframework.core.Roma;
  * 
  * @author Luca Garulli (luca.garulli--at--assetdata.it)
  */
-@CoreClass(orderFields = "totalItems pageLabel pages", orderActions = "first prev next last queryAll csv")
+@CoreClass(orderFields = "totalItems totalItemsEstimate pageLabel pages", orderActions = "first prev next last queryAll csv")
 @ViewClass(label = "")
 public class CRUDPaging implements ViewCallback {
 
 	public static final int				DEF_PAGE_ELEMENTS	= 15;
 
+	private static Log						log								= LogFactory.getLog(CRUDPaging.class);
+
 	@ViewField(label = "", render = "text", enabled = AnnotationConstants.FALSE)
 	protected int									totalItems;
 
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected boolean							totalItemsEstimated;
+
 	@ViewField(visible = AnnotationConstants.FALSE)
 	protected int									currentPage;
 
@@ -58,6 +71,14 @@ public class CRUDPaging implements ViewCallback {
 	@ViewField(visible = AnnotationConstants.FALSE)
 	protected boolean							pagingEnabled			= true;
 
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected boolean							keysetPaging			= false;
+
+	/**
+	 * Total items computed in background, applied by the request thread in onShow() or in the paging actions once available.
+	 */
+	private transient volatile Future<Long>	pendingTotalItems;
+
 	public static final String		QUERY_ALL_MESSAGE	= "queryAll";
 	protected static final String	PAGE_LABEL				= "$page";
 	protected static final String	TOTAL_ITEMS_LABEL	= "$totalItems";
@@ -74,6 +95,7 @@ public class CRUDPaging implements ViewCallback {
 	}
 
 	public void onShow() {
+		applyPendingTotalItems();
 		Roma.setFeature(this, "first", ViewActionFeatures.ENABLED, currentPage > 1);
 		Roma.setFeature(this, "prev", ViewActionFeatures.ENABLED, currentPage > 1);
 		Roma.setFeature(this, "next", ViewActionFeatures.ENABLED, currentPage < pages.length);
@@ -136,6 +158,7 @@ public class CRUDPaging implements ViewCallback {
 
 	@Persistence(mode = PersistenceConstants.MODE_NOTX)
 	public void setCurrentPage(int iCurrentPage) {
+		applyPendingTotalItems();
 		if (pages.length == 0)
 			// NO PAGES LOADED YET: TAKES NO EFFECT
 			return;
@@ -143,11 +166,56 @@ public class CRUDPaging implements ViewCallback {
 		if (iCurrentPage == currentPage && pagingEnabled)
 			return;
 
+		// THE KEYS OF THE DISPLAYED PAGE ARE VALID ONLY IF IT WAS A SINGLE PAGE
+		boolean keysValid = pagingEnabled;
 		if (!pagingEnabled)
 			pagingEnabled(true);
 
+		int previousPage = currentPage;
 		this.currentPage = iCurrentPage;
-		refreshCurrentPage();
+		if (keysValid && isKeysetPaging() && loadPageByKey(previousPage)) {
+			Roma.fieldChanged(this, "pages");
+			onShow();
+		} else
+			refreshCurrentPage();
+	}
+
+	/**
+	 * Load the current page starting from the keys of the page displayed before. Only moves to the adjacent pages and to the last
+	 * page can be resolved by key, random jumps are left to the offset paging.
+	 * 
+	 * @param iPreviousPage
+	 *          the page displayed before the change.
+	 * @return true if the page was loaded, false if the offset paging must be used.
+	 */
+	protected boolean loadPageByKey(int iPreviousPage) {
+		KeysetPagingListener keysetListener = (KeysetPagingListener) listener;
+		if (!keysetListener.isKeysetAvailable() || currentPage == 1)
+			// FIRST PAGE HAS NO OFFSET TO SKIP
+			return false;
+
+		if (currentPage == iPreviousPage + 1) {
+			Object[] key = keysetListener.getLastRowKey();
+			if (key == null)
+				return false;
+			keysetListener.loadPageAfter(key, getPageElements());
+			return true;
+		}
+
+		if (currentPage == iPreviousPage - 1) {
+			Object[] key = keysetListener.getFirstRowKey();
+			if (key == null)
+				return false;
+			keysetListener.loadPageBefore(key, getPageElements());
+			return true;
+		}
+
+		if (currentPage == pages.length && !totalItemsEstimated) {
+			// LAST PAGE: READ BACKWARD FROM THE END
+			keysetListener.loadPageBefore(null, totalItems - (pages.length - 1) * getPageElements());
+			return true;
+		}
+		return false;
 	}
 
 	@ViewAction(visible = AnnotationConstants.FALSE)
@@ -178,11 +246,20 @@ public class CRUDPaging implements ViewCallback {
 	 *          Total pages
 	 */
 	public void setPagesCount(int iPageTotal) {
-		pages = new Integer[iPageTotal];
+		pages = createPages(iPageTotal);
+		Roma.fieldChanged(this, "pages");
+	}
+
+	protected Integer[] createPages(int iPageTotal) {
+		Integer[] newPages = new Integer[iPageTotal];
 		for (int i = 0; i < iPageTotal; ++i)
-			pages[i] = i + 1;
+			newPages[i] = i + 1;
+		return newPages;
+	}
 
-		Roma.fieldChanged(this, "pages");
+	protected int getPagesCount(int iTotalItems) {
+		int pagesOffset = iTotalItems % pageElements;
+		return iTotalItems / pageElements + (pagesOffset != 0 ? 1 : 0);
 	}
 
 	public int getTotalItems() {
@@ -190,9 +267,79 @@ public class CRUDPaging implements ViewCallback {
 	}
 
 	public void setTotalItems(int totalItems) {
+		pendingTotalItems = null;
 		this.totalItems = totalItems;
-		int pagesOffset = totalItems % pageElements;
-		setPagesCount(totalItems / pageElements + (pagesOffset != 0 ? 1 : 0));
+		this.totalItemsEstimated = false;
+		setPagesCount(getPagesCount(totalItems));
+	}
+
+	/**
+	 * Set a provisional total while the real one is computed. The total is displayed as "iLoadedItems+" and, if the loaded page is
+	 * full, the next page is made available.
+	 * 
+	 * @param iLoadedItems
+	 *          Items loaded until now
+	 * @param iHasMore
+	 *          true if there could be other items after the loaded ones
+	 */
+	public void setTotalItemsEstimate(int iLoadedItems, boolean iHasMore) {
+		pendingTotalItems = null;
+		this.totalItems = iLoadedItems;
+		this.totalItemsEstimated = iHasMore;
+		setPagesCount(getPagesCount(iLoadedItems) + (iHasMore ? 1 : 0));
+	}
+
+	/**
+	 * Set the total items computed in background. The total is applied by the request thread in the next paging action, or in
+	 * onShow() when the session refreshes the paging after refreshFromBackground(). Getters never apply it, since it changes the
+	 * pages while they are rendered.
+	 * 
+	 * @param iTotalItems
+	 *          the computation of the total items
+	 */
+	public void setPendingTotalItems(Future<Long> iTotalItems) {
+		pendingTotalItems = iTotalItems;
+	}
+
+	/**
+	 * Ask the session to refresh the paging once the total items computed in background is available. Can be called by any thread:
+	 * the session displays the paging again, calling onShow() that applies the total.
+	 * 
+	 * @param iSession
+	 *          Session that displays the paging
+	 */
+	public void refreshFromBackground(SessionInfo iSession) {
+		ViewComponent form = Roma.aspect(ViewAspect.class).getFormByObject(iSession, this);
+		if (form != null)
+			Roma.aspect(ViewAspect.class).pushCommand(new RefreshViewCommand(iSession, form));
+	}
+
+	/**
+	 * Apply the total items computed in background, if available.
+	 */
+	protected void applyPendingTotalItems() {
+		Future<Long> pending = pendingTotalItems;
+		if (pending == null || !pending.isDone())
+			return;
+
+		pendingTotalItems = null;
+		if (pending.isCancelled())
+			return;
+		try {
+			setTotalItems(pending.get().intValue());
+		} catch (Exception e) {
+			// COUNT FAILED: KEEP THE ESTIMATE
+			log.warn("[CRUDPaging.applyPendingTotalItems] Error on counting the items, the total displayed is an estimate", e);
+		}
+	}
+
+	@ViewField(label = "", render = "label")
+	public String getTotalItemsEstimate() {
+		return totalItemsEstimated ? "+" : "";
+	}
+
+	public boolean isTotalItemsEstimated() {
+		return totalItemsEstimated;
 	}
 
 	@ViewField(visible = AnnotationConstants.FALSE)
@@ -208,6 +355,25 @@ public class CRUDPaging implements ViewCallback {
 		return pagingEnabled;
 	}
 
+	/**
+	 * Tell if the pages are loaded by key. It's effective only when the listener is a KeysetPagingListener.
+	 */
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public boolean isKeysetPaging() {
+		return keysetPaging && listener instanceof KeysetPagingListener;
+	}
+
+	/**
+	 * Enable the keyset paging: next, previous and last pages are loaded by the sort key of the rows displayed instead of by
+	 * offset. Random page jumps still use the offset.
+	 * 
+	 * @param keysetPaging
+	 *          true to enable the keyset paging.
+	 */
+	public void setKeysetPaging(boolean keysetPaging) {
+		this.keysetPaging = keysetPaging;
+	}
+
 	public void onDispose() {
 	}
 }
\ No newline at end of file
@@ -108,6 +108,9 @@ public abstract class CRUDSelect<T> extends CRUDMain<T> implements Bindable {
 					o = ((ComposedEntity<?>) fullSelection[i]).getEntity();
 				else
 					o = fullSelection[i];
+				if (entityProjection != null)
+					// PROJECTED ROWS ARE NOT PERSISTENT: LOAD THE WHOLE ENTITY
+					o = entityProjection.load(o);
 				fullSelection[i] = Roma.context().persistence().refreshObject(o, PersistenceAspect.FULL_MODE_LOADING, PersistenceAspect.STRATEGY_DETACHING);
 				if (fullSelection[i] == null) {
 					if (o != null)
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+/**
+ * Predicate on the value of a column, used to filter lists in memory.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public interface ColumnFilter {
+
+	/**
+	 * Return true to keep the element having the value received.
+	 */
+	public boolean accept(Object iValue);
+}
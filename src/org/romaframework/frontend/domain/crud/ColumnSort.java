@@ -0,0 +1,281 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.romaframework.core.Roma;
+import org.romaframework.core.schema.SchemaHelper;
+
+/**
+ * Sorts lists in memory by a field of the elements. The values of the column are read once and converted in keys specialized by
+ * type: numbers and dates are compared as primitives, or as BigDecimal when a double would lose precision, enums by name as the
+ * datastore stores them, strings by the collation keys of the active locale. The result is a
+ * permutation of the positions of the elements, so the list is not copied until needed.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class ColumnSort {
+
+	/**
+	 * Compares two positions of the column.
+	 */
+	public interface PositionComparator {
+		public int compare(int iPosition1, int iPosition2);
+	}
+
+	/**
+	 * Values of a field for all the elements of a list, read once.
+	 */
+	public static class Column {
+		/**
+		 * Greatest magnitude of the longs converted to double without loss.
+		 */
+		private static final long				MAX_EXACT_DOUBLE	= 1L << 53;
+
+		protected final String					field;
+		protected final Object[]				values;
+		protected final boolean[]				nulls;
+		protected long[]								longKeys;
+		protected double[]							doubleKeys;
+		protected Object[]							objectKeys;
+
+		public Column(List<?> iElements, String iField) {
+			field = iField;
+			values = new Object[iElements.size()];
+			nulls = new boolean[values.length];
+
+			boolean integral = true;
+			boolean numeric = true;
+			boolean exactAsDouble = true;
+			boolean finite = true;
+			boolean enumerated = true;
+			boolean text = true;
+			boolean comparable = true;
+			int i = 0;
+			for (Object element : iElements) {
+				Object value = element != null ? SchemaHelper.getFieldValue(element, iField) : null;
+				values[i] = value;
+				nulls[i] = value == null;
+				if (value != null) {
+					boolean isIntegral = value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+							|| value instanceof Date || value instanceof Boolean || value instanceof Character;
+					integral &= isIntegral;
+					numeric &= isIntegral || value instanceof Number;
+					exactAsDouble &= isIntegral ? Math.abs(toLong(value)) <= MAX_EXACT_DOUBLE : value instanceof Double || value instanceof Float;
+					finite &= !(value instanceof Double || value instanceof Float) || !Double.isNaN(((Number) value).doubleValue())
+							&& !Double.isInfinite(((Number) value).doubleValue());
+					enumerated &= value instanceof Enum<?>;
+					text &= value instanceof String;
+					comparable &= value instanceof Comparable<?>;
+				}
+				i++;
+			}
+
+			if (integral) {
+				longKeys = new long[values.length];
+				for (i = 0; i < values.length; ++i)
+					if (!nulls[i])
+						longKeys[i] = toLong(values[i]);
+			} else if (numeric && (exactAsDouble || !finite)) {
+				// NAN AND INFINITE HAVE NO EXACT REPRESENTATION: PRECISION IS LOST ONLY IN THIS CASE
+				doubleKeys = new double[values.length];
+				for (i = 0; i < values.length; ++i)
+					if (!nulls[i])
+						doubleKeys[i] = values[i] instanceof Number ? ((Number) values[i]).doubleValue() : toLong(values[i]);
+			} else if (numeric) {
+				// BIG OR MIXED NUMBERS: EXACT COMPARISON
+				objectKeys = new BigDecimal[values.length];
+				for (i = 0; i < values.length; ++i)
+					if (!nulls[i])
+						objectKeys[i] = toBigDecimal(values[i]);
+			} else if (enumerated) {
+				// BY NAME AS STORED BY THE DATASTORE, NOT BY ORDINAL
+				objectKeys = new String[values.length];
+				for (i = 0; i < values.length; ++i)
+					if (!nulls[i])
+						objectKeys[i] = ((Enum<?>) values[i]).name();
+			} else if (text || !comparable) {
+				// STRINGS AND NOT COMPARABLE OBJECTS ARE SORTED AS DISPLAYED
+				Locale locale = Roma.session() != null ? Roma.session().getActiveLocale() : null;
+				Collator collator = Collator.getInstance(locale != null ? locale : Locale.getDefault());
+				objectKeys = new CollationKey[values.length];
+				for (i = 0; i < values.length; ++i)
+					if (!nulls[i])
+						objectKeys[i] = collator.getCollationKey(values[i].toString());
+			} else
+				objectKeys = values;
+		}
+
+		public String getField() {
+			return field;
+		}
+
+		public int size() {
+			return values.length;
+		}
+
+		public Object getValue(int iPosition) {
+			return values[iPosition];
+		}
+
+		/**
+		 * Return the comparator of the positions by value. Null values come first in ascending order.
+		 */
+		public PositionComparator getComparator(final boolean iAscending) {
+			final int direction = iAscending ? 1 : -1;
+			if (longKeys != null)
+				return new PositionComparator() {
+					public int compare(int iPosition1, int iPosition2) {
+						int cmp = compareNulls(iPosition1, iPosition2);
+						if (cmp == 2) {
+							long k1 = longKeys[iPosition1];
+							long k2 = longKeys[iPosition2];
+							cmp = k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+						}
+						return cmp * direction;
+					}
+				};
+			if (doubleKeys != null)
+				return new PositionComparator() {
+					public int compare(int iPosition1, int iPosition2) {
+						int cmp = compareNulls(iPosition1, iPosition2);
+						if (cmp == 2)
+							cmp = Double.compare(doubleKeys[iPosition1], doubleKeys[iPosition2]);
+						return cmp * direction;
+					}
+				};
+			return new PositionComparator() {
+				@SuppressWarnings("unchecked")
+				public int compare(int iPosition1, int iPosition2) {
+					int cmp = compareNulls(iPosition1, iPosition2);
+					if (cmp == 2)
+						cmp = ((Comparable<Object>) objectKeys[iPosition1]).compareTo(objectKeys[iPosition2]);
+					return cmp * direction;
+				}
+			};
+		}
+
+		/**
+		 * Sort the positions received.
+		 */
+		public void sort(int[] iPositions, boolean iAscending) {
+			ColumnSort.sort(iPositions, getComparator(iAscending));
+		}
+
+		/**
+		 * Return the positions of all the elements sorted by value.
+		 */
+		public int[] sortIndex(boolean iAscending) {
+			int[] positions = new int[values.length];
+			for (int i = 0; i < positions.length; ++i)
+				positions[i] = i;
+			sort(positions, iAscending);
+			return positions;
+		}
+
+		/**
+		 * Return -1 or 1 if only one of the values is null, 0 if both are null, 2 if both are not null.
+		 */
+		private int compareNulls(int iPosition1, int iPosition2) {
+			if (nulls[iPosition1])
+				return nulls[iPosition2] ? 0 : -1;
+			return nulls[iPosition2] ? 1 : 2;
+		}
+
+		private static BigDecimal toBigDecimal(Object iValue) {
+			if (iValue instanceof BigDecimal)
+				return (BigDecimal) iValue;
+			if (iValue instanceof BigInteger)
+				return new BigDecimal((BigInteger) iValue);
+			if (iValue instanceof Double || iValue instanceof Float)
+				return new BigDecimal(((Number) iValue).doubleValue());
+			if (iValue instanceof Number && !(iValue instanceof Long || iValue instanceof Integer || iValue instanceof Short || iValue instanceof Byte))
+				// OTHER NUMBER TYPES
+				return new BigDecimal(iValue.toString());
+			return BigDecimal.valueOf(toLong(iValue));
+		}
+
+		private static long toLong(Object iValue) {
+			if (iValue instanceof Date)
+				return ((Date) iValue).getTime();
+			if (iValue instanceof Boolean)
+				return ((Boolean) iValue) ? 1 : 0;
+			if (iValue instanceof Character)
+				return (Character) iValue;
+			return ((Number) iValue).longValue();
+		}
+	}
+
+	/**
+	 * Return a new list with the elements sorted by the field.
+	 */
+	public static <T> List<T> sort(List<T> iElements, String iField, boolean iAscending) {
+		int[] positions = new Column(iElements, iField).sortIndex(iAscending);
+		List<T> result = new ArrayList<T>(positions.length);
+		for (int position : positions)
+			result.add(iElements.get(position));
+		return result;
+	}
+
+	/**
+	 * Stable merge sort of the positions, without boxing them.
+	 */
+	public static void sort(int[] iPositions, PositionComparator iComparator) {
+		int[] aux = iPositions.clone();
+		mergeSort(aux, iPositions, 0, iPositions.length, iComparator);
+	}
+
+	private static void mergeSort(int[] iSrc, int[] iDest, int iLow, int iHigh, PositionComparator iComparator) {
+		int length = iHigh - iLow;
+		if (length < 7) {
+			// INSERTION SORT ON SMALL RANGES
+			for (int i = iLow; i < iHigh; i++)
+				for (int j = i; j > iLow && iComparator.compare(iDest[j - 1], iDest[j]) > 0; j--) {
+					int tmp = iDest[j];
+					iDest[j] = iDest[j - 1];
+					iDest[j - 1] = tmp;
+				}
+			return;
+		}
+
+		int mid = (iLow + iHigh) >>> 1;
+		mergeSort(iDest, iSrc, iLow, mid, iComparator);
+		mergeSort(iDest, iSrc, mid, iHigh, iComparator);
+
+		if (iComparator.compare(iSrc[mid - 1], iSrc[mid]) <= 0) {
+			// ALREADY SORTED
+			System.arraycopy(iSrc, iLow, iDest, iLow, length);
+			return;
+		}
+
+		for (int i = iLow, p = iLow, q = mid; i < iHigh; i++) {
+			if (q >= iHigh || p < mid && iComparator.compare(iSrc[p], iSrc[q]) <= 0)
+				iDest[i] = iSrc[p++];
+			else
+				iDest[i] = iSrc[q++];
+		}
+	}
+}
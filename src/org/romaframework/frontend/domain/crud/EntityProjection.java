@@ -0,0 +1,224 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.romaframework.aspect.persistence.PersistenceAspect;
+import org.romaframework.aspect.persistence.Query;
+import org.romaframework.aspect.view.feature.ViewFieldFeatures;
+import org.romaframework.core.Roma;
+import org.romaframework.core.domain.entity.ComposedEntity;
+import org.romaframework.core.schema.SchemaClass;
+import org.romaframework.core.schema.SchemaField;
+import org.romaframework.core.schema.SchemaHelper;
+
+/**
+ * Loads the entities displayed by a listable class reading only the fields the listable class shows. The entities returned are
+ * lightweight rows: only the projected fields are set. Use load() to get the whole entity of a row.
+ * 
+ * Requires a ProjectionQueryExecutor component.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class EntityProjection<T> {
+
+	protected SchemaClass						entityClass;
+	protected String[]							fields;
+
+	/**
+	 * OIDs of the rows returned, by identity since the rows are not complete to compare them.
+	 */
+	private final Map<Object, String>	rowOIDs	= Collections.synchronizedMap(new IdentityHashMap<Object, String>());
+
+	public EntityProjection(SchemaClass iListClass) {
+		entityClass = iListClass.getField(ComposedEntity.NAME).getType().getSchemaClass();
+		fields = getListFields(iListClass, entityClass);
+	}
+
+	public static boolean isAvailable() {
+		return Roma.existComponent(ProjectionQueryExecutor.class);
+	}
+
+	/**
+	 * Execute the query returning a lightweight row for each entity found.
+	 * 
+	 * @param iExtraFields
+	 *          fields to read in addition to the ones displayed, such as the sort keys. Can be null.
+	 */
+	public List<T> query(Query iQuery, String[] iExtraFields) {
+		String[] queryFields = getQueryFields(iExtraFields);
+		return createRows(queryFields, execute(iQuery, queryFields));
+	}
+
+	/**
+	 * Return the fields displayed plus the extra fields received, without duplicates.
+	 */
+	public String[] getQueryFields(String[] iExtraFields) {
+		if (iExtraFields == null || iExtraFields.length == 0)
+			return fields;
+		Set<String> all = new LinkedHashSet<String>();
+		Collections.addAll(all, fields);
+		Collections.addAll(all, iExtraFields);
+		return all.toArray(new String[all.size()]);
+	}
+
+	/**
+	 * Execute the query in the datastore only, without creating the rows.
+	 * 
+	 * @return the values of the fields by OID, in the query order
+	 */
+	public Map<String, Object[]> execute(Query iQuery, String[] iQueryFields) {
+		return Roma.component(ProjectionQueryExecutor.class).queryProjection(iQuery, iQueryFields);
+	}
+
+	/**
+	 * Create the rows of the values returned by execute().
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> createRows(String[] iQueryFields, Map<String, Object[]> iValues) {
+		List<T> result = new ArrayList<T>(iValues.size());
+		for (Map.Entry<String, Object[]> entry : iValues.entrySet()) {
+			T row = (T) createRow(iQueryFields, entry.getValue());
+			rowOIDs.put(row, entry.getKey());
+			result.add(row);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the whole entity of a row, detached as the entities loaded by the CRUD without projection. Objects not returned by
+	 * query() are returned as is.
+	 */
+	public Object load(Object iRow) {
+		String oid = rowOIDs.get(iRow);
+		if (oid == null)
+			return iRow;
+		PersistenceAspect db = Roma.context().persistence();
+		Object loaded = db.loadObjectByOID(oid, PersistenceAspect.FULL_MODE_LOADING);
+		if (loaded == null)
+			return null;
+		return db.refreshObject(loaded, PersistenceAspect.FULL_MODE_LOADING, PersistenceAspect.STRATEGY_DETACHING);
+	}
+
+	public boolean isRow(Object iRow) {
+		return rowOIDs.containsKey(iRow);
+	}
+
+	/**
+	 * Forget the rows of a page no longer cached, except the ones still displayed. The rows can be wrapped in ComposedEntity
+	 * instances.
+	 */
+	public void release(Collection<?> iPage, Collection<?> iDisplayed) {
+		if (iPage == null)
+			return;
+		Set<Object> displayed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		if (iDisplayed != null)
+			for (Object o : iDisplayed)
+				displayed.add(unwrap(o));
+		for (Object o : iPage) {
+			Object row = unwrap(o);
+			if (!displayed.contains(row))
+				rowOIDs.remove(row);
+		}
+	}
+
+	private static Object unwrap(Object iElement) {
+		return iElement instanceof ComposedEntity<?> ? ((ComposedEntity<?>) iElement).getEntity() : iElement;
+	}
+
+	/**
+	 * Forget the rows returned so far. Call it when a new query starts.
+	 */
+	public void clear() {
+		rowOIDs.clear();
+	}
+
+	public String[] getFields() {
+		return fields;
+	}
+
+	protected Object createRow(String[] iFields, Object[] iValues) {
+		Object row = SchemaHelper.createObject(entityClass);
+		for (int i = 0; i < iFields.length; ++i) {
+			int sep = iFields[i].indexOf('.');
+			if (sep == -1) {
+				SchemaHelper.setFieldValue(row, iFields[i], iValues[i]);
+				continue;
+			}
+
+			// EMBEDDED FIELD: CREATE THE OWNER THE FIRST TIME
+			String ownerName = iFields[i].substring(0, sep);
+			Object owner = SchemaHelper.getFieldValue(row, ownerName);
+			if (owner == null) {
+				owner = SchemaHelper.createObject(entityClass.getField(ownerName).getType().getSchemaClass());
+				SchemaHelper.setFieldValue(row, ownerName, owner);
+			}
+			SchemaHelper.setFieldValue(owner, iFields[i].substring(sep + 1), iValues[i]);
+		}
+		return row;
+	}
+
+	/**
+	 * Return the persistent fields of the entity displayed by the visible fields of the listable class. Embedded objects are
+	 * expanded in the paths of their simple persistent fields.
+	 */
+	public static String[] getListFields(SchemaClass iListClass, SchemaClass iEntityClass) {
+		List<String> result = new ArrayList<String>();
+		Iterator<SchemaField> it = iListClass.getFieldIterator();
+		while (it.hasNext()) {
+			SchemaField listField = it.next();
+			if (ComposedEntity.NAME.equals(listField.getName()) || Boolean.FALSE.equals(listField.getFeature(ViewFieldFeatures.VISIBLE)))
+				continue;
+
+			SchemaField field = iEntityClass.getField(listField.getName());
+			if (field == null || SchemaHelper.isMultiValueObject(field) || !Roma.context().persistence().isFieldPersistent(field))
+				continue;
+
+			if (isSimpleType(field)) {
+				result.add(field.getName());
+				continue;
+			}
+
+			Iterator<SchemaField> embedded = field.getType().getSchemaClass().getFieldIterator();
+			while (embedded.hasNext()) {
+				SchemaField embeddedField = embedded.next();
+				if (isSimpleType(embeddedField) && Roma.context().persistence().isFieldPersistent(embeddedField))
+					result.add(field.getName() + "." + embeddedField.getName());
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	private static boolean isSimpleType(SchemaField iField) {
+		if (!(iField.getLanguageType() instanceof Class<?>))
+			return false;
+		Class<?> type = (Class<?>) iField.getLanguageType();
+		return type.isPrimitive() || type.isEnum() || Number.class.isAssignableFrom(type) || String.class.equals(type) || Boolean.class.equals(type)
+				|| Character.class.equals(type) || Date.class.isAssignableFrom(type);
+	}
+}
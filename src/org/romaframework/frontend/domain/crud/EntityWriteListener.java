@@ -0,0 +1,36 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+/**
+ * Listener of the entities written by the frontend. Register it to the EntityWriteNotifier.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public interface EntityWriteListener {
+
+	/**
+	 * Called after an entity has been created or updated.
+	 */
+	public void onEntitySaved(Object iEntity);
+
+	/**
+	 * Called after an entity has been deleted.
+	 */
+	public void onEntityDeleted(Object iEntity);
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Notifies the entities created, updated and deleted through the frontend CRUDs and keeps a write version per entity class. Caches
+ * can store the version of the class they depend on and check it later, without registering any listener.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class EntityWriteNotifier {
+
+	private static EntityWriteNotifier					instance	= new EntityWriteNotifier();
+
+	private List<EntityWriteListener>						listeners	= new CopyOnWriteArrayList<EntityWriteListener>();
+	private ConcurrentMap<Class<?>, AtomicLong>	versions	= new ConcurrentHashMap<Class<?>, AtomicLong>();
+
+	private static Log													log				= LogFactory.getLog(EntityWriteNotifier.class);
+
+	protected EntityWriteNotifier() {
+	}
+
+	public static EntityWriteNotifier getInstance() {
+		return instance;
+	}
+
+	public void registerListener(EntityWriteListener iListener) {
+		listeners.add(iListener);
+	}
+
+	public void unregisterListener(EntityWriteListener iListener) {
+		listeners.remove(iListener);
+	}
+
+	public void entitySaved(Object iEntity) {
+		if (iEntity == null)
+			return;
+		incrementVersion(iEntity.getClass());
+		for (EntityWriteListener listener : listeners)
+			try {
+				listener.onEntitySaved(iEntity);
+			} catch (RuntimeException e) {
+				log.error("[EntityWriteNotifier.entitySaved] Error on listener " + listener, e);
+			}
+	}
+
+	public void entityDeleted(Object iEntity) {
+		if (iEntity == null)
+			return;
+		incrementVersion(iEntity.getClass());
+		for (EntityWriteListener listener : listeners)
+			try {
+				listener.onEntityDeleted(iEntity);
+			} catch (RuntimeException e) {
+				log.error("[EntityWriteNotifier.entityDeleted] Error on listener " + listener, e);
+			}
+	}
+
+	/**
+	 * Return the write version of the class. It changes every time an instance of the class, or of a subclass, is written.
+	 */
+	public long getVersion(Class<?> iClass) {
+		AtomicLong version = versions.get(iClass);
+		return version != null ? version.get() : 0;
+	}
+
+	protected void incrementVersion(Class<?> iClass) {
+		for (Class<?> cls = iClass; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+			AtomicLong version = versions.get(cls);
+			if (version == null) {
+				version = new AtomicLong();
+				AtomicLong previous = versions.putIfAbsent(cls, version);
+				if (previous != null)
+					version = previous;
+			}
+			version.incrementAndGet();
+		}
+	}
+}
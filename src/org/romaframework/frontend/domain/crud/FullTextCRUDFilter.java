@@ -1,6 +1,9 @@
 package org.romaframework.frontend.domain.crud;
 
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.romaframework.aspect.core.annotation.AnnotationConstants;
 import org.romaframework.aspect.core.annotation.CoreField;
@@ -13,12 +16,24 @@ import org.romaframework.aspect.view.feature.ViewActionFeatures;
 import org.romaframework.aspect.view.feature.ViewFieldFeatures;
 import org.romaframework.core.Roma;
 import org.romaframework.core.schema.SchemaClass;
-import org.romaframework.core.schema.SchemaField;
 import org.romaframework.core.schema.SchemaObject;
+import org.romaframework.frontend.domain.fulltext.FullTextIndex;
+import org.romaframework.frontend.domain.fulltext.FullTextIndexManager;
+import org.romaframework.frontend.domain.fulltext.OIDFilterBuilder;
 
 @SuppressWarnings("unchecked")
 public class FullTextCRUDFilter<T> extends CRUDFilter<T> implements ViewCallback {
 
+	/**
+	 * Maximum number of values of a field to search by equality, above it the field is searched with LIKE.
+	 */
+	public static final int	MAX_INDEXED_VALUES	= 50;
+
+	/**
+	 * Maximum number of OIDs passed to the OIDFilterBuilder, above it the field values are used.
+	 */
+	public static final int	MAX_INDEXED_OIDS		= 1000;
+
 	@ViewField(label = "Cerca")
 	protected String				fullTextSearch;
 
@@ -83,17 +98,20 @@ public class FullTextCRUDFilter<T> extends CRUDFilter<T> implements ViewCallback
 		String[] splittato = fullTextSearch.split(" ");
 		QueryByFilter query = new QueryByFilter(getEntity().getClass(), QueryByFilter.PREDICATE_AND);
 		SchemaObject schema = Roma.session().getSchemaObject(this.getAdvancedFilter());
+		List<String> fields = FullTextIndexManager.getSearchFields(schema.getField("entity").getType());
+		FullTextIndex index = FullTextIndexManager.getInstance().getReadyIndex(getEntity().getClass());
+		if (index != null && !new HashSet<String>(Arrays.asList(index.getFields())).equals(new HashSet<String>(fields)))
+			// THE INDEX DOESN'T COVER THE SAME FIELDS OF THE SESSION: IT WOULD RETURN DIFFERENT RESULTS
+			index = null;
 		for (String token : splittato) {
-			QueryByFilterItemGroup subfilter = new QueryByFilterItemGroup(QueryByFilter.PREDICATE_OR);
-			Iterator<SchemaField> iterator = schema.getField("entity").getType().getFieldIterator();
-			while (iterator.hasNext()) {
-				SchemaField field = iterator.next();
-				if (String.class.equals(field.getLanguageType()) && Boolean.TRUE.equals(field.getFeature(ViewFieldFeatures.VISIBLE))) {
-
-					if (token.length() > 0) {
-						subfilter.addItem(field.getName(), QueryByFilter.FIELD_LIKE, token);
-					}
-				}
+			QueryByFilterItemGroup subfilter = null;
+			if (index != null)
+				subfilter = createIndexedSubfilter(index, token);
+			if (subfilter == null) {
+				subfilter = new QueryByFilterItemGroup(QueryByFilter.PREDICATE_OR);
+				if (token.length() > 0)
+					for (String field : fields)
+						subfilter.addItem(field, QueryByFilter.FIELD_LIKE, token);
 			}
 			if (!subfilter.getItems().isEmpty()) {
 				query.addItem(subfilter);
@@ -103,6 +121,44 @@ public class FullTextCRUDFilter<T> extends CRUDFilter<T> implements ViewCallback
 		return query;
 	}
 
+	/**
+	 * Create the predicate of the token from the full-text index, so the datastore can use its indexes instead of scanning with LIKE.
+	 * The token is matched only as prefix of the words of the indexed fields. The OIDs found are passed to the datastore if an
+	 * OIDFilterBuilder is registered, otherwise the values of the fields found, up to MAX_INDEXED_VALUES in total. The index knows
+	 * only the entities written through the frontend, so a token not found is searched with LIKE.
+	 * 
+	 * @return the predicate, or null to use LIKE on all the fields.
+	 */
+	protected QueryByFilterItemGroup createIndexedSubfilter(FullTextIndex iIndex, String iToken) {
+		String indexToken = iIndex.getSingleToken(iToken);
+		if (indexToken == null || iIndex.getFields().length == 0)
+			return null;
+
+		QueryByFilterItemGroup subfilter = new QueryByFilterItemGroup(QueryByFilter.PREDICATE_OR);
+		if (Roma.existComponent(OIDFilterBuilder.class)) {
+			Set<String> oids = iIndex.search(indexToken);
+			if (oids.isEmpty())
+				return null;
+			if (oids.size() <= MAX_INDEXED_OIDS) {
+				subfilter.addItem(Roma.component(OIDFilterBuilder.class).createOIDFilter(iIndex.getEntityClass(), oids));
+				return subfilter;
+			}
+		}
+
+		int total = 0;
+		for (String field : iIndex.getFields()) {
+			Set<String> values = iIndex.getFieldValues(field, indexToken, MAX_INDEXED_VALUES);
+			if (values == null || (total += values.size()) > MAX_INDEXED_VALUES)
+				// TOO MANY VALUES: LIKE ON ALL THE FIELDS
+				return null;
+			for (String value : values)
+				subfilter.addItem(field, QueryByFilter.FIELD_EQUALS, value);
+		}
+
+		// THE INDEX DOESN'T CONTAIN THE TOKEN: IT CAN BE IN ENTITIES WRITTEN OUTSIDE THE FRONTEND
+		return subfilter.getItems().isEmpty() ? null : subfilter;
+	}
+
 	public void onDispose() {
 
 	}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2006-2007 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+/**
+ * Paging listener able to load pages relative to the sort key of a known row (keyset or "seek" paging) instead of skipping
+ * rows by offset. Used by CRUDPaging when keyset paging is enabled. Annotations of interfaces are not inherited: hide the methods
+ * in the implementations.
+ * 
+ * @see CRUDPaging#setKeysetPaging(boolean)
+ */
+public interface KeysetPagingListener extends PagingListener {
+	/**
+	 * Tell if the current query can be paged by key.
+	 * 
+	 * @return true if the sort key of the current query is known, otherwise false and the offset paging is used.
+	 */
+	public boolean isKeysetAvailable();
+
+	/**
+	 * Return the sort key values of the first row of the page currently loaded.
+	 * 
+	 * @return the key values in order of sort fields, null if not available.
+	 */
+	public Object[] getFirstRowKey();
+
+	/**
+	 * Return the sort key values of the last row of the page currently loaded.
+	 * 
+	 * @return the key values in order of sort fields, null if not available.
+	 */
+	public Object[] getLastRowKey();
+
+	/**
+	 * Load the page of elements that follow the key.
+	 * 
+	 * @param iKey
+	 *          the sort key values of the last row of the previous page.
+	 * @param iElements
+	 *          the number of elements to load.
+	 */
+	public void loadPageAfter(Object[] iKey, int iElements);
+
+	/**
+	 * Load the page of elements that precede the key.
+	 * 
+	 * @param iKey
+	 *          the sort key values of the first row of the next page, null to load the last elements.
+	 * @param iElements
+	 *          the number of elements to load.
+	 */
+	public void loadPageBefore(Object[] iKey, int iElements);
+}
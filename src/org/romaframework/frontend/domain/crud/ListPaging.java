@@ -2,18 +2,23 @@ package org.romaframework.frontend.domain.crud;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.romaframework.aspect.core.annotation.AnnotationConstants;
 import org.romaframework.aspect.core.feature.CoreFieldFeatures;
 import org.romaframework.aspect.view.ViewCallback;
 import org.romaframework.aspect.view.ViewConstants;
+import org.romaframework.aspect.view.WindowedDataProvider;
+import org.romaframework.aspect.view.annotation.ViewAction;
 import org.romaframework.aspect.view.annotation.ViewField;
 import org.romaframework.core.Roma;
 import org.romaframework.core.schema.SchemaClass;
 import org.romaframework.core.schema.SchemaHelper;
 
-public class ListPaging<T> implements PagingListener, ViewCallback {
+public class ListPaging<T> implements PagingListener, ViewCallback, WindowedDataProvider<T> {
 
 	@ViewField(label = "", render = ViewConstants.RENDER_OBJECTEMBEDDED, position = "form://paging")
 	protected CRUDPaging	paging;
@@ -28,6 +33,22 @@ public class ListPaging<T> implements PagingListener, ViewCallback {
 
 	protected SchemaClass	listableClass;
 
+	/**
+	 * Values of the columns used to sort and filter, read from realElements the first time they are needed.
+	 */
+	private Map<String, ColumnSort.Column>	columns			= new HashMap<String, ColumnSort.Column>();
+	/**
+	 * Positions of realElements sorted ascending by column.
+	 */
+	private Map<String, int[]>							sortIndexes	= new HashMap<String, int[]>();
+	private Map<String, ColumnFilter>				filters			= new LinkedHashMap<String, ColumnFilter>();
+	private String													sortField;
+	private boolean													sortAscending;
+	/**
+	 * Positions of realElements displayed in order, null to display them all as they are.
+	 */
+	private int[]														view;
+
 	protected ListPaging() {
 		this(10);
 	}
@@ -52,22 +73,69 @@ public class ListPaging<T> implements PagingListener, ViewCallback {
 	}
 
 	public void loadAllPages() {
-		elements = realElements;
+		elements = getViewElements(0, getViewSize());
 		Roma.fieldChanged(this, "elements");
 	}
 
 	public void loadPage(int iFrom, int iTo) {
-		if (realElements.size() < iTo) {
-			iTo = realElements.size();
+		int size = getViewSize();
+		if (size < iTo) {
+			iTo = size;
 			if (iFrom >= iTo) {
 				iFrom = iTo < paging.getPageElements() ? 0 : iTo - paging.getPageElements();
 			}
 		}
 
-		elements = realElements.subList(iFrom, iTo);
+		elements = getViewElements(iFrom, iTo);
 		Roma.fieldChanged(this, "elements");
 	}
 
+	/**
+	 * Return the number of elements displayed, after the filters.
+	 */
+	protected int getViewSize() {
+		if (realElements == null)
+			return 0;
+		return view != null ? view.length : realElements.size();
+	}
+
+	public boolean providesRows(String iFieldName) {
+		return "elements".equals(iFieldName);
+	}
+
+	public int size() {
+		return getViewSize();
+	}
+
+	/**
+	 * Return the elements in the range of the current order and filters.
+	 */
+	public List<T> fetch(int iFrom, int iCount) {
+		int to = Math.min(iFrom + iCount, getViewSize());
+		if (iFrom >= to)
+			return new ArrayList<T>();
+		return new ArrayList<T>(getViewElements(iFrom, to));
+	}
+
+	/**
+	 * Drop the indexes of the columns. Call it after changing the elements returned by getRealElements().
+	 */
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void invalidate() {
+		columns.clear();
+		sortIndexes.clear();
+		updateView();
+	}
+
+	protected List<T> getViewElements(int iFrom, int iTo) {
+		if (view == null)
+			return realElements.subList(iFrom, iTo);
+		List<T> page = new ArrayList<T>(iTo - iFrom);
+		for (int i = iFrom; i < iTo; ++i)
+			page.add(realElements.get(view[i]));
+		return page;
+	}
+
 	public void onShow() {
 		Roma.setFeature(this, "elements", CoreFieldFeatures.EMBEDDED_TYPE, listableClass);
 		Roma.setFeature(this, "selected", CoreFieldFeatures.EMBEDDED_TYPE, listableClass);
@@ -76,10 +144,117 @@ public class ListPaging<T> implements PagingListener, ViewCallback {
 	public void onDispose() {
 	}
 
+	/**
+	 * Sort all the elements in memory by a column and display the current page again.
+	 */
+	public void onResultSort(String field, String mode) {
+		sort(field, "true".equals(mode));
+	}
+
+	/**
+	 * Sort the elements by a column. The index of the column is built the first time, then it's reused also by the filters.
+	 * 
+	 * @param iField
+	 *          the field to sort by, null to display the elements in the original order.
+	 */
+	public void sort(String iField, boolean iAscending) {
+		sortField = iField;
+		sortAscending = iAscending;
+		updateView();
+		paging.refreshCurrentPage();
+	}
+
+	/**
+	 * Display only the elements whose value of the field is accepted by the filter. The filters of different fields are in AND.
+	 * 
+	 * @param iFilter
+	 *          the filter, null to remove the filter of the field.
+	 */
+	public void setFilter(String iField, ColumnFilter iFilter) {
+		if (iFilter == null)
+			filters.remove(iField);
+		else
+			filters.put(iField, iFilter);
+		updateView();
+		refreshTotalItems();
+	}
+
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void clearFilters() {
+		filters.clear();
+		updateView();
+		refreshTotalItems();
+	}
+
+	protected void updateView() {
+		if (realElements == null || (sortField == null && filters.isEmpty())) {
+			view = null;
+			return;
+		}
+
+		int size = realElements.size();
+		int[] sorted = sortField != null ? getSortIndex(sortField) : null;
+
+		ColumnSort.Column[] filterColumns = new ColumnSort.Column[filters.size()];
+		ColumnFilter[] filterPredicates = new ColumnFilter[filters.size()];
+		int f = 0;
+		for (Map.Entry<String, ColumnFilter> entry : filters.entrySet()) {
+			filterColumns[f] = getColumn(entry.getKey());
+			filterPredicates[f++] = entry.getValue();
+		}
+
+		int[] result = new int[size];
+		int count = 0;
+		for (int i = 0; i < size; ++i) {
+			// DESCENDING ORDER READS THE ASCENDING INDEX BACKWARD
+			int position = sorted == null ? i : sorted[sortAscending ? i : size - 1 - i];
+			boolean accepted = true;
+			for (f = 0; f < filterColumns.length && accepted; ++f)
+				accepted = filterPredicates[f].accept(filterColumns[f].getValue(position));
+			if (accepted)
+				result[count++] = position;
+		}
+
+		if (count < size) {
+			int[] trimmed = new int[count];
+			System.arraycopy(result, 0, trimmed, 0, count);
+			result = trimmed;
+		}
+		view = result;
+	}
+
+	protected ColumnSort.Column getColumn(String iField) {
+		ColumnSort.Column column = columns.get(iField);
+		if (column == null) {
+			column = new ColumnSort.Column(realElements, iField);
+			columns.put(iField, column);
+		}
+		return column;
+	}
+
+	protected int[] getSortIndex(String iField) {
+		int[] index = sortIndexes.get(iField);
+		if (index == null) {
+			index = getColumn(iField).sortIndex(true);
+			sortIndexes.put(iField, index);
+		}
+		return index;
+	}
+
+	private void refreshTotalItems() {
+		paging.setTotalItems(getViewSize());
+		paging.setCurrentPage(1);
+		paging.refreshCurrentPage();
+		Roma.fieldChanged(this, "paging");
+	}
+
 	public void loadList(Collection<T> collection) {
 		realElements = new ArrayList<T>(collection);
 		selected = new ArrayList<T>();
-		paging.setTotalItems(realElements.size());
+		columns.clear();
+		sortIndexes.clear();
+		updateView();
+		paging.setTotalItems(getViewSize());
 		paging.refreshCurrentPage();
 		Roma.fieldChanged(this, "paging");
 	}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2006-2007 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.romaframework.frontend.util.BackgroundExecutor;
+
+/**
+ * Bounded LRU cache of the pages already loaded by a paged component (CRUDMain, QueryPaging). Pages are keyed by the query
+ * instance and the range. The cache is bound to the component, so it lives in the user session. It must be cleared every time
+ * the query or the data changes.
+ */
+public class PageCache {
+
+	public static final int					DEF_MAX_PAGES	= 10;
+
+	protected Map<PageKey, List<?>>	pages;
+	protected int										maxPages;
+	protected int										generation;
+	protected long									version;
+	protected EvictionListener			evictionListener;
+	protected long									hits;
+	protected long									misses;
+
+	private static Log							log						= LogFactory.getLog(PageCache.class);
+
+	public PageCache() {
+		this(DEF_MAX_PAGES);
+	}
+
+	public PageCache(int iMaxPages) {
+		maxPages = iMaxPages;
+		pages = new LinkedHashMap<PageKey, List<?>>(iMaxPages + 1, 0.75f, true) {
+			private static final long	serialVersionUID	= 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<PageKey, List<?>> eldest) {
+				if (size() <= maxPages)
+					return false;
+				notifyEvicted(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Return a page previously loaded.
+	 * 
+	 * @return the page if cached, otherwise null.
+	 */
+	public synchronized List<?> get(Object iQuery, int iFrom, int iTo) {
+		List<?> page = pages.get(new PageKey(iQuery, iFrom, iTo));
+		if (page != null)
+			hits++;
+		else
+			misses++;
+		return page;
+	}
+
+	public synchronized boolean contains(Object iQuery, int iFrom, int iTo) {
+		return pages.containsKey(new PageKey(iQuery, iFrom, iTo));
+	}
+
+	public synchronized void put(Object iQuery, int iFrom, int iTo, List<?> iPage) {
+		put(iQuery, iFrom, iTo, iPage, generation);
+	}
+
+	/**
+	 * Put a page loaded from the generation received. If the cache was cleared in the meanwhile the page is discarded.
+	 */
+	protected synchronized void put(Object iQuery, int iFrom, int iTo, List<?> iPage, int iGeneration) {
+		if (iPage != null && iGeneration == generation)
+			pages.put(new PageKey(iQuery, iFrom, iTo), iPage);
+	}
+
+	/**
+	 * Load in background a page not yet cached. The loader is invoked by the BackgroundExecutor with its own persistence context and
+	 * must not touch the view nor the query used by the request thread.
+	 * 
+	 * @param iQuery
+	 *          the query that owns the page
+	 * @param iFrom
+	 *          the start index of page.
+	 * @param iTo
+	 *          the destination index.
+	 * @param iLoader
+	 *          returns the page to cache
+	 */
+	public void prefetch(final Object iQuery, final int iFrom, final int iTo, final Callable<List<?>> iLoader) {
+		final int currentGeneration;
+		synchronized (this) {
+			if (pages.containsKey(new PageKey(iQuery, iFrom, iTo)))
+				return;
+			currentGeneration = generation;
+		}
+
+		BackgroundExecutor.getInstance().submitInContext(new Callable<Object>() {
+			public Object call() throws Exception {
+				try {
+					put(iQuery, iFrom, iTo, iLoader.call(), currentGeneration);
+				} catch (Exception e) {
+					log.warn("[PageCache.prefetch] Error on prefetching page " + iFrom + "-" + iTo, e);
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Remove all the pages if the write version of the entities changed since the last check.
+	 * 
+	 * @param iVersion
+	 *          the current write version of the entity class cached, as returned by EntityWriteNotifier.getVersion()
+	 * @see EntityWriteNotifier#getVersion(Class)
+	 */
+	public synchronized void checkVersion(long iVersion) {
+		if (iVersion != version) {
+			clear();
+			version = iVersion;
+		}
+	}
+
+	/**
+	 * Remove all the pages. Pages being prefetched are discarded when they arrive.
+	 */
+	public synchronized void clear() {
+		generation++;
+		for (List<?> page : pages.values())
+			notifyEvicted(page);
+		pages.clear();
+	}
+
+	/**
+	 * Set the listener notified of the pages removed from the cache, null to remove it.
+	 */
+	public void setEvictionListener(EvictionListener iListener) {
+		evictionListener = iListener;
+	}
+
+	protected void notifyEvicted(List<?> iPage) {
+		EvictionListener listener = evictionListener;
+		if (listener != null)
+			try {
+				listener.onPageEvicted(iPage);
+			} catch (RuntimeException e) {
+				log.warn("[PageCache.notifyEvicted] Error on listener " + listener, e);
+			}
+	}
+
+	public synchronized int size() {
+		return pages.size();
+	}
+
+	public int getMaxPages() {
+		return maxPages;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PageCache pages=" + pages.size() + "/" + maxPages + " hits=" + hits + " misses=" + misses;
+	}
+
+	/**
+	 * Notified of the pages removed from the cache, to release what is bound to their elements.
+	 */
+	public interface EvictionListener {
+		public void onPageEvicted(List<?> iPage);
+	}
+
+	protected static class PageKey {
+		protected Object	query;
+		protected int			from;
+		protected int			to;
+
+		public PageKey(Object iQuery, int iFrom, int iTo) {
+			query = iQuery;
+			from = iFrom;
+			to = iTo;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PageKey))
+				return false;
+			PageKey other = (PageKey) obj;
+			// THE QUERY IS COMPARED BY IDENTITY: EVERY SEARCH CREATES A NEW ONE
+			return query == other.query && from == other.from && to == other.to;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(query) * 31 * 31 + from * 31 + to;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+import java.util.Map;
+
+import org.romaframework.aspect.persistence.Query;
+
+/**
+ * Executes a query reading only some fields of the matching objects. Register an implementation as component to let the CRUDs
+ * with the projection enabled avoid loading the whole entities to display the result.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public interface ProjectionQueryExecutor {
+
+	/**
+	 * Execute the query honoring its range and orders.
+	 * 
+	 * @param iQuery
+	 *          the query to execute
+	 * @param iFields
+	 *          the fields to read. Fields of embedded objects are expressed as paths, e.g. "address.city"
+	 * @return the values of the fields, in the same order of iFields, by OID. The iteration order must be the order of the query.
+	 */
+	public Map<String, Object[]> queryProjection(Query iQuery, String[] iFields);
+}
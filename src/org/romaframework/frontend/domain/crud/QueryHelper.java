@@ -0,0 +1,135 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.romaframework.aspect.persistence.Query;
+import org.romaframework.aspect.persistence.QueryByExample;
+import org.romaframework.aspect.persistence.QueryByFilter;
+import org.romaframework.aspect.persistence.QueryByFilterItem;
+import org.romaframework.aspect.persistence.QueryByFilterOrder;
+import org.romaframework.aspect.persistence.QueryByText;
+import org.romaframework.core.Roma;
+import org.romaframework.core.schema.SchemaClass;
+import org.romaframework.core.schema.SchemaField;
+import org.romaframework.core.schema.SchemaHelper;
+
+/**
+ * Helper class to copy the queries of the CRUDs, or to change them temporarily and restore them as they were.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class QueryHelper {
+
+	/**
+	 * Return a copy of the query to execute it out of the request thread while the CRUD keeps changing the original one. The example
+	 * of a QueryByExample is copied too, since it's the object bound to the filter form.
+	 * 
+	 * @return the copy, or null if the type of query is not supported: in this case lock the original query while using it.
+	 */
+	public static Query copy(Query iQuery) {
+		Query copy;
+		if (iQuery instanceof QueryByExample) {
+			QueryByExample qbe = (QueryByExample) iQuery;
+			Object example = copyExample(qbe.getFilter());
+			if (qbe.getFilter() != null && example == null)
+				return null;
+			QueryByFilter additional = qbe.getAdditionalFilter() != null ? copyFilter(qbe.getAdditionalFilter()) : null;
+			copy = new QueryByExample(qbe.getCandidateClass(), example, additional);
+		} else if (iQuery instanceof QueryByFilter)
+			copy = copyFilter((QueryByFilter) iQuery);
+		else if (iQuery instanceof QueryByText)
+			copy = new QueryByText(iQuery.getCandidateClass(), ((QueryByText) iQuery).getText());
+		else
+			return null;
+
+		copy.setMode(iQuery.getMode());
+		copy.setStrategy(iQuery.getStrategy());
+		return copy;
+	}
+
+	public static QueryByFilter copyFilter(QueryByFilter iFilter) {
+		QueryByFilter copy = new QueryByFilter(iFilter.getCandidateClass(), iFilter.getPredicateOperator());
+		copy.setItems(getItems(iFilter));
+		for (QueryByFilterOrder order : iFilter.getOrders())
+			copy.addOrder(order.getFieldName(), order.getFieldOrder());
+		copy.setMode(iFilter.getMode());
+		copy.setStrategy(iFilter.getStrategy());
+		return copy;
+	}
+
+	/**
+	 * Shallow copy of the example object, null if it can't be copied.
+	 */
+	private static Object copyExample(Object iExample) {
+		if (iExample == null)
+			return null;
+		try {
+			SchemaClass schema = Roma.schema().getSchemaClass(iExample.getClass());
+			Object copy = SchemaHelper.createObject(schema);
+			Iterator<SchemaField> it = schema.getFieldIterator();
+			while (it.hasNext()) {
+				SchemaField field = it.next();
+				SchemaHelper.setFieldValue(copy, field.getName(), field.getValue(iExample));
+			}
+			return copy;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Return a snapshot of the predicate items of the filter.
+	 */
+	public static List<QueryByFilterItem> getItems(QueryByFilter iFilter) {
+		return new ArrayList<QueryByFilterItem>(iFilter.getItems());
+	}
+
+	/**
+	 * Return a snapshot of the orders of the filter.
+	 */
+	public static List<QueryByFilterOrder> getOrders(QueryByFilter iFilter) {
+		return new ArrayList<QueryByFilterOrder>(iFilter.getOrders());
+	}
+
+	/**
+	 * Return a snapshot of the orders of any query: the orders of a QueryByFilter or of the additional filter of a QueryByExample.
+	 * Other queries have no order.
+	 */
+	public static List<QueryByFilterOrder> getOrders(Query iQuery) {
+		QueryByFilter filter = null;
+		if (iQuery instanceof QueryByFilter)
+			filter = (QueryByFilter) iQuery;
+		else if (iQuery instanceof QueryByExample)
+			filter = ((QueryByExample) iQuery).getAdditionalFilter();
+		return filter != null ? getOrders(filter) : new ArrayList<QueryByFilterOrder>();
+	}
+
+	/**
+	 * Replace items and orders of the filter with the snapshots received.
+	 */
+	public static void restore(QueryByFilter iFilter, List<QueryByFilterItem> iItems, List<QueryByFilterOrder> iOrders) {
+		iFilter.clear();
+		iFilter.setItems(new ArrayList<QueryByFilterItem>(iItems));
+		for (QueryByFilterOrder order : iOrders)
+			iFilter.addOrder(order.getFieldName(), order.getFieldOrder());
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2006-2007 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.crud;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.romaframework.aspect.persistence.PersistenceAspect;
+import org.romaframework.aspect.persistence.Query;
+import org.romaframework.core.Roma;
+import org.romaframework.core.entity.EntityHelper;
+import org.romaframework.core.repository.GenericRepository;
+import org.romaframework.core.schema.SchemaClass;
+
+/**
+ * Iterates all the results of a query loading them in chunks, so only one chunk at a time is kept in memory. Useful to export
+ * big results. The iterator works on a copy of the query, so the query received can be used by other threads while iterating.
+ * 
+ * The iterator can be consumed by another thread than the one that created it, such as the thread streaming a download after the
+ * request ended: in that case every chunk is loaded detached, with its own Roma context created and destroyed around the query.
+ * 
+ * @param <T>
+ *          Entity class of the query
+ */
+public class QueryIterator<T> implements Iterator<Object> {
+
+	public static final int					DEF_CHUNK_SIZE	= 500;
+
+	protected GenericRepository<T>	repository;
+	protected Query									query;
+	protected SchemaClass						listClass;
+	protected int										chunkSize;
+
+	protected List<?>								chunk;
+	protected int										position;
+	protected int										from;
+	protected boolean								lastChunk;
+	protected final Thread					owner						= Thread.currentThread();
+
+	public QueryIterator(GenericRepository<T> iRepository, Query iQuery) {
+		this(iRepository, iQuery, null, DEF_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param iRepository
+	 *          Repository used to execute the query
+	 * @param iQuery
+	 *          Query to execute
+	 * @param iListClass
+	 *          ComposedEntity class used to wrap every entity, null to return the entities
+	 * @param iChunkSize
+	 *          Number of entities to load for every query
+	 */
+	public QueryIterator(GenericRepository<T> iRepository, Query iQuery, SchemaClass iListClass, int iChunkSize) {
+		repository = iRepository;
+		synchronized (iQuery) {
+			query = QueryHelper.copy(iQuery);
+		}
+		if (query == null)
+			throw new CRUDException("Query not supported by the iterator: " + iQuery.getClass());
+		listClass = iListClass;
+		chunkSize = iChunkSize;
+	}
+
+	public boolean hasNext() {
+		if (chunk != null && position < chunk.size())
+			return true;
+		if (lastChunk)
+			return false;
+		loadChunk();
+		return position < chunk.size();
+	}
+
+	public Object next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return chunk.get(position++);
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	protected void loadChunk() {
+		if (Thread.currentThread() == owner) {
+			fetchNextChunk();
+			return;
+		}
+
+		// THE CONTEXT OF THE OWNER CAN BE GONE: USE A NEW ONE AND DETACH THE ENTITIES READ AFTER IT'S DESTROYED
+		query.setStrategy(PersistenceAspect.STRATEGY_DETACHING);
+		Roma.context().create();
+		try {
+			fetchNextChunk();
+		} finally {
+			Roma.context().destroy();
+		}
+	}
+
+	protected void fetchNextChunk() {
+		query.setRangeFrom(from, from + chunkSize);
+		List<T> result = repository.findByCriteria(query);
+		from += chunkSize;
+		lastChunk = result.size() < chunkSize;
+		position = 0;
+
+		if (listClass == null) {
+			chunk = result;
+			return;
+		}
+
+		try {
+			chunk = EntityHelper.createComposedEntityList(result, listClass);
+		} catch (Exception e) {
+			throw new CRUDException("Error on creating wrapper class for result. Class: " + listClass, e);
+		}
+	}
+}
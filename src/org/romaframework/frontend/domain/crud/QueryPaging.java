@@ -2,12 +2,15 @@ package org.romaframework.frontend.domain.crud;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.romaframework.aspect.core.annotation.AnnotationConstants;
 import org.romaframework.aspect.core.feature.CoreFieldFeatures;
 import org.romaframework.aspect.persistence.Query;
 import org.romaframework.aspect.view.ViewCallback;
 import org.romaframework.aspect.view.ViewConstants;
+import org.romaframework.aspect.view.WindowedDataProvider;
+import org.romaframework.aspect.view.annotation.ViewAction;
 import org.romaframework.aspect.view.annotation.ViewField;
 import org.romaframework.core.Roma;
 import org.romaframework.core.domain.entity.ComposedEntity;
@@ -16,7 +19,7 @@ import org.romaframework.core.repository.GenericRepository;
 import org.romaframework.core.schema.SchemaClass;
 import org.romaframework.core.schema.SchemaHelper;
 
-public class QueryPaging<T extends ComposedEntity<E>, E> implements PagingListener, ViewCallback {
+public class QueryPaging<T extends ComposedEntity<E>, E> implements PagingListener, ViewCallback, WindowedDataProvider<T> {
 
 	@ViewField(label = "", render = ViewConstants.RENDER_OBJECTEMBEDDED, position = "form://paging")
 	protected CRUDPaging						paging;
@@ -36,6 +39,13 @@ public class QueryPaging<T extends ComposedEntity<E>, E> implements PagingListen
 
 	protected SchemaClass						listableClass;
 
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected PageCache							pageCache;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected boolean								projection;
+	protected EntityProjection<E>		entityProjection;
+
 	protected QueryPaging() {
 		this(10);
 	}
@@ -68,15 +78,131 @@ public class QueryPaging<T extends ComposedEntity<E>, E> implements PagingListen
 		executeQuery();
 	}
 
+	@SuppressWarnings("unchecked")
 	public void loadPage(int iFrom, int iTo) {
 		if (query == null) {
 			return;
 		}
-		query.setRangeFrom(iFrom, iTo);
-		executeQuery();
+		checkPageCache();
+		List<T> page = pageCache != null ? (List<T>) pageCache.get(query, iFrom, iTo) : null;
+		if (page != null) {
+			elements = page;
+			Roma.fieldChanged(this, "elements");
+		} else {
+			synchronized (query) {
+				query.setRangeFrom(iFrom, iTo);
+				executeQuery();
+			}
+			if (pageCache != null)
+				pageCache.put(query, iFrom, iTo, elements);
+		}
+		prefetchPage(iTo, iTo + (iTo - iFrom));
+	}
+
+	/**
+	 * Load in background the page in the range received, if the page cache is enabled. The page is loaded on a copy of the query.
+	 */
+	protected void prefetchPage(final int iFrom, final int iTo) {
+		if (pageCache == null || iFrom >= paging.getTotalItems())
+			return;
+
+		final Query copy;
+		synchronized (query) {
+			copy = QueryHelper.copy(query);
+		}
+		if (copy == null)
+			// QUERY NOT COPYABLE: DON'T SHARE IT WITH THE BACKGROUND THREAD
+			return;
+
+		pageCache.prefetch(query, iFrom, iTo, new Callable<List<?>>() {
+			public List<?> call() throws Exception {
+				copy.setRangeFrom(iFrom, iTo);
+				return createListables(findByCriteria(copy));
+			}
+		});
+	}
+
+	/**
+	 * Execute the query in the range received returning the listable objects, without changing the elements displayed nor the range
+	 * of the query.
+	 */
+	protected List<T> queryRange(Query iQuery, int iFrom, int iTo) throws Exception {
+		Query copy;
+		synchronized (iQuery) {
+			copy = QueryHelper.copy(iQuery);
+			if (copy == null) {
+				int rangeFrom = iQuery.getRangeFrom();
+				int rangeTo = iQuery.getRangeTo();
+				try {
+					iQuery.setRangeFrom(iFrom, iTo);
+					return createListables(findByCriteria(iQuery));
+				} finally {
+					iQuery.setRangeFrom(rangeFrom, rangeTo);
+				}
+			}
+		}
+		copy.setRangeFrom(iFrom, iTo);
+		return createListables(findByCriteria(copy));
+	}
+
+	protected List<T> createListables(List<E> els) throws Exception {
+		List<T> page = new ArrayList<T>();
+		for (E o : els) {
+			page.add(createListable(o));
+		}
+		return page;
+	}
+
+	public boolean providesRows(String iFieldName) {
+		return "elements".equals(iFieldName);
+	}
+
+	public int size() {
+		return query != null ? paging.getTotalItems() : 0;
+	}
+
+	/**
+	 * Return the listable objects in the range of the current query, reading the pages cached if enabled.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> fetch(int iFrom, int iCount) {
+		if (query == null || iCount <= 0)
+			return new ArrayList<T>();
+
+		int to = iFrom + iCount;
+		checkPageCache();
+		List<T> page = pageCache != null ? (List<T>) pageCache.get(query, iFrom, to) : null;
+		if (page == null) {
+			try {
+				page = queryRange(query, iFrom, to);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			if (pageCache != null)
+				pageCache.put(query, iFrom, to, page);
+		}
+		return new ArrayList<T>(page);
+	}
+
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void invalidate() {
+		if (pageCache != null)
+			pageCache.clear();
+	}
+
+	/**
+	 * Remove the cached pages if any entity of the class queried was written after they were loaded.
+	 */
+	protected void checkPageCache() {
+		if (pageCache != null && query != null)
+			pageCache.checkVersion(EntityWriteNotifier.getInstance().getVersion(query.getCandidateClass()));
 	}
 
 	protected void search(Query query) {
+		if (pageCache != null)
+			pageCache.clear();
+		if (entityProjection != null)
+			entityProjection.clear();
 		this.query = query;
 		query.setRangeFrom(0, paging.getPageElements());
 		executeQuery();
@@ -88,7 +214,7 @@ public class QueryPaging<T extends ComposedEntity<E>, E> implements PagingListen
 	}
 
 	protected void executeQuery() {
-		List<E> els = repository.findByCriteria(query);
+		List<E> els = findByCriteria(query);
 		try {
 			elements = new ArrayList<T>();
 			for (E o : els) {
@@ -100,6 +226,41 @@ public class QueryPaging<T extends ComposedEntity<E>, E> implements PagingListen
 		}
 	}
 
+	/**
+	 * Execute the query through the repository, or reading only the fields displayed if the projection is enabled.
+	 */
+	protected List<E> findByCriteria(Query iQuery) {
+		if (projection && EntityProjection.isAvailable()) {
+			if (entityProjection == null)
+				entityProjection = new EntityProjection<E>(listableClass);
+			return entityProjection.query(iQuery, null);
+		}
+		return repository.findByCriteria(iQuery);
+	}
+
+	/**
+	 * Return the whole entity of an element. Use it instead of getEntity() when the projection is enabled.
+	 */
+	@SuppressWarnings("unchecked")
+	public E loadEntity(T iElement) {
+		if (entityProjection == null)
+			return iElement.getEntity();
+		return (E) entityProjection.load(iElement.getEntity());
+	}
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public boolean isProjection() {
+		return projection;
+	}
+
+	/**
+	 * Enable the load of the elements reading only the fields displayed by the listable class. Requires a ProjectionQueryExecutor
+	 * component, otherwise the entities are loaded as usual.
+	 */
+	public void setProjection(boolean projection) {
+		this.projection = projection;
+	}
+
 	@SuppressWarnings("unchecked")
 	protected T createListable(E instance) throws Exception {
 		return (T) EntityHelper.createObject(instance, listableClass);
@@ -147,4 +308,28 @@ public class QueryPaging<T extends ComposedEntity<E>, E> implements PagingListen
 		this.selected = selected;
 	}
 
+	/**
+	 * Return the cache of the pages already loaded, null if disabled.
+	 */
+	public PageCache getPageCache() {
+		return pageCache;
+	}
+
+	/**
+	 * Enable the cache of the pages already loaded and the prefetch of the next page passing a PageCache instance, or disable it
+	 * passing null.
+	 */
+	public void setPageCache(PageCache pageCache) {
+		this.pageCache = pageCache;
+		if (pageCache != null)
+			pageCache.setEvictionListener(new PageCache.EvictionListener() {
+				public void onPageEvicted(List<?> iPage) {
+					// THE OIDS OF THE PROJECTED ROWS ARE KEPT ONLY WHILE CACHED OR DISPLAYED
+					EntityProjection<E> projection = entityProjection;
+					if (projection != null)
+						projection.release(iPage, elements);
+				}
+			});
+	}
+
 }
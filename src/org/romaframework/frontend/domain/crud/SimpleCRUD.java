@@ -77,9 +77,11 @@ public class SimpleCRUD<T, E extends ComposedEntity<T>> extends SelectableInstan
 	public void save() {
 		for (E obj : deleted) {
 			repository.delete(obj.getEntity());
+			EntityWriteNotifier.getInstance().entityDeleted(obj.getEntity());
 		}
 		for (E obj : entities) {
 			repository.update(obj.getEntity());
+			EntityWriteNotifier.getInstance().entitySaved(obj.getEntity());
 		}
 
 		reload();
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.fulltext;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.romaframework.aspect.persistence.QueryByFilter;
+import org.romaframework.core.Roma;
+import org.romaframework.core.repository.GenericRepository;
+import org.romaframework.frontend.domain.crud.QueryIterator;
+
+/**
+ * In memory inverted index of the String fields of an entity class. For every token it keeps the OIDs of the entities containing
+ * it and, for every field, the distinct values containing it. Tokens are matched by prefix.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class FullTextIndex {
+
+	protected Class<?>																						entityClass;
+	protected String[]																						fields;
+	protected Tokenizer																						tokenizer;
+
+	private final ReadWriteLock																		lock				= new ReentrantReadWriteLock();
+	private Map<String, String[]>																	documents		= new HashMap<String, String[]>();
+	private TreeMap<String, Set<String>>													postings		= new TreeMap<String, Set<String>>();
+	private Map<String, TreeMap<String, Map<String, Integer>>>	fieldValues	= new HashMap<String, TreeMap<String, Map<String, Integer>>>();
+	private volatile boolean																			built;
+
+	/**
+	 * Writes received while rebuilding, replayed on the new index before replacing the current one: values by OID, null if deleted.
+	 */
+	private Map<String, String[]>																	pendingWrites;
+	private final Object																					rebuildLock	= new Object();
+
+	private static Log																						log					= LogFactory.getLog(FullTextIndex.class);
+
+	public FullTextIndex(Class<?> iEntityClass, String[] iFields, Tokenizer iTokenizer) {
+		entityClass = iEntityClass;
+		fields = iFields;
+		tokenizer = iTokenizer;
+		for (String field : fields)
+			fieldValues.put(field, new TreeMap<String, Map<String, Integer>>());
+	}
+
+	/**
+	 * Index the entity, replacing its previous values.
+	 */
+	public void index(String iOID, Object iEntity) {
+		String[] values = new String[fields.length];
+		for (int i = 0; i < fields.length; ++i) {
+			Object value = Roma.schema().getSchemaClass(iEntity.getClass()).getField(fields[i]).getValue(iEntity);
+			values[i] = value != null ? value.toString() : null;
+		}
+
+		lock.writeLock().lock();
+		try {
+			removeDocument(iOID);
+			addDocument(iOID, values);
+			if (pendingWrites != null)
+				pendingWrites.put(iOID, values);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(String iOID) {
+		lock.writeLock().lock();
+		try {
+			removeDocument(iOID);
+			if (pendingWrites != null)
+				pendingWrites.put(iOID, null);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the OIDs of the entities that contain all the tokens of the text, each one as prefix of a word.
+	 */
+	public Set<String> search(String iText) {
+		Set<String> result = null;
+		lock.readLock().lock();
+		try {
+			for (String token : tokenizer.tokenize(iText)) {
+				Set<String> tokenResult = new HashSet<String>();
+				for (Set<String> oids : getPrefixRange(postings, token).values())
+					tokenResult.addAll(oids);
+
+				if (result == null)
+					result = tokenResult;
+				else
+					result.retainAll(tokenResult);
+				if (result.isEmpty())
+					break;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result != null ? result : new HashSet<String>();
+	}
+
+	/**
+	 * Return the distinct values of the field that contain a word starting with the token.
+	 * 
+	 * @param iToken
+	 *          a single token, normalized by the tokenizer
+	 * @param iMaxValues
+	 *          maximum number of values to return
+	 * @return the values, or null if the field is not indexed or there are more than iMaxValues values.
+	 */
+	public Set<String> getFieldValues(String iField, String iToken, int iMaxValues) {
+		lock.readLock().lock();
+		try {
+			TreeMap<String, Map<String, Integer>> tokens = fieldValues.get(iField);
+			if (tokens == null)
+				return null;
+
+			Set<String> result = new HashSet<String>();
+			for (Map<String, Integer> values : getPrefixRange(tokens, iToken).values()) {
+				result.addAll(values.keySet());
+				if (result.size() > iMaxValues)
+					return null;
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the only token of the text, null if the text has zero or many tokens.
+	 */
+	public String getSingleToken(String iText) {
+		List<String> tokens = tokenizer.tokenize(iText);
+		return tokens.size() == 1 ? tokens.get(0) : null;
+	}
+
+	/**
+	 * Rebuild the index loading all the entities of the class from the repository, in chunks. The entities indexed or removed while
+	 * rebuilding are applied to the new index before it replaces the current one.
+	 */
+	@SuppressWarnings("unchecked")
+	public void rebuild() {
+		synchronized (rebuildLock) {
+			long start = System.currentTimeMillis();
+			lock.writeLock().lock();
+			try {
+				pendingWrites = new HashMap<String, String[]>();
+			} finally {
+				lock.writeLock().unlock();
+			}
+
+			FullTextIndex fresh = new FullTextIndex(entityClass, fields, tokenizer);
+			try {
+				GenericRepository<Object> repository = (GenericRepository<Object>) Roma.repository((Class<Object>) entityClass);
+				Iterator<Object> iterator = new QueryIterator<Object>(repository, new QueryByFilter(entityClass));
+				while (iterator.hasNext()) {
+					Object entity = iterator.next();
+					fresh.index(Roma.context().persistence().getOID(entity).trim(), entity);
+				}
+			} catch (RuntimeException e) {
+				lock.writeLock().lock();
+				try {
+					pendingWrites = null;
+				} finally {
+					lock.writeLock().unlock();
+				}
+				throw e;
+			}
+
+			lock.writeLock().lock();
+			try {
+				// REPLAY THE WRITES THE LOADED ENTITIES CAN MISS
+				for (Map.Entry<String, String[]> write : pendingWrites.entrySet()) {
+					fresh.removeDocument(write.getKey());
+					if (write.getValue() != null)
+						fresh.addDocument(write.getKey(), write.getValue());
+				}
+				pendingWrites = null;
+
+				documents = fresh.documents;
+				postings = fresh.postings;
+				fieldValues = fresh.fieldValues;
+				built = true;
+			} finally {
+				lock.writeLock().unlock();
+			}
+			log.info("[FullTextIndex.rebuild] Indexed " + size() + " " + entityClass.getSimpleName() + " in "
+					+ (System.currentTimeMillis() - start) + "ms");
+		}
+	}
+
+	/**
+	 * Return true if the index has been built and can be queried.
+	 */
+	public boolean isBuilt() {
+		return built;
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	public String[] getFields() {
+		return fields;
+	}
+
+	private void addDocument(String iOID, String[] iValues) {
+		documents.put(iOID, iValues);
+		for (int i = 0; i < fields.length; ++i) {
+			if (iValues[i] == null)
+				continue;
+			for (String token : new HashSet<String>(tokenizer.tokenize(iValues[i]))) {
+				Set<String> oids = postings.get(token);
+				if (oids == null) {
+					oids = new HashSet<String>();
+					postings.put(token, oids);
+				}
+				oids.add(iOID);
+
+				Map<String, Integer> values = fieldValues.get(fields[i]).get(token);
+				if (values == null) {
+					values = new HashMap<String, Integer>();
+					fieldValues.get(fields[i]).put(token, values);
+				}
+				Integer count = values.get(iValues[i]);
+				values.put(iValues[i], count != null ? count + 1 : 1);
+			}
+		}
+	}
+
+	private void removeDocument(String iOID) {
+		String[] oldValues = documents.remove(iOID);
+		if (oldValues == null)
+			return;
+
+		for (int i = 0; i < fields.length; ++i) {
+			if (oldValues[i] == null)
+				continue;
+			for (String token : new HashSet<String>(tokenizer.tokenize(oldValues[i]))) {
+				Set<String> oids = postings.get(token);
+				if (oids != null) {
+					oids.remove(iOID);
+					if (oids.isEmpty())
+						postings.remove(token);
+				}
+
+				Map<String, Integer> values = fieldValues.get(fields[i]).get(token);
+				if (values != null) {
+					Integer count = values.get(oldValues[i]);
+					if (count == null || count <= 1)
+						values.remove(oldValues[i]);
+					else
+						values.put(oldValues[i], count - 1);
+					if (values.isEmpty())
+						fieldValues.get(fields[i]).remove(token);
+				}
+			}
+		}
+	}
+
+	private static <V> SortedMap<String, V> getPrefixRange(TreeMap<String, V> iMap, String iPrefix) {
+		if (iPrefix.length() == 0)
+			return new TreeMap<String, V>();
+		return iMap.subMap(iPrefix, iPrefix + Character.MAX_VALUE);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.fulltext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.romaframework.aspect.view.feature.ViewFieldFeatures;
+import org.romaframework.core.Roma;
+import org.romaframework.core.schema.SchemaClassDefinition;
+import org.romaframework.core.schema.SchemaField;
+import org.romaframework.frontend.domain.crud.EntityWriteListener;
+import org.romaframework.frontend.domain.crud.EntityWriteNotifier;
+
+/**
+ * Holds the full-text indexes by entity class and keeps them updated with the entities written through the frontend. Register the
+ * classes to index at startup and build them with rebuild().
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class FullTextIndexManager implements EntityWriteListener {
+
+	private static FullTextIndexManager									instance	= new FullTextIndexManager();
+
+	protected Tokenizer																	tokenizer	= new SimpleTokenizer();
+	private ConcurrentMap<Class<?>, FullTextIndex>	indexes		= new ConcurrentHashMap<Class<?>, FullTextIndex>();
+
+	protected FullTextIndexManager() {
+		EntityWriteNotifier.getInstance().registerListener(this);
+	}
+
+	public static FullTextIndexManager getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Register the class to index. The fields returned by getSearchFields() are indexed. The index is empty until rebuilt.
+	 */
+	public FullTextIndex register(Class<?> iEntityClass) {
+		List<String> fields = getSearchFields(Roma.schema().getSchemaClass(iEntityClass));
+		return register(new FullTextIndex(iEntityClass, fields.toArray(new String[fields.size()]), tokenizer));
+	}
+
+	/**
+	 * Return the fields searched by the full-text filters: the visible String fields of the class.
+	 */
+	public static List<String> getSearchFields(SchemaClassDefinition iClass) {
+		List<String> fields = new ArrayList<String>();
+		Iterator<SchemaField> iterator = iClass.getFieldIterator();
+		while (iterator.hasNext()) {
+			SchemaField field = iterator.next();
+			if (String.class.equals(field.getLanguageType()) && Boolean.TRUE.equals(field.getFeature(ViewFieldFeatures.VISIBLE)))
+				fields.add(field.getName());
+		}
+		return fields;
+	}
+
+	/**
+	 * Register a custom index.
+	 */
+	public FullTextIndex register(FullTextIndex iIndex) {
+		indexes.put(iIndex.getEntityClass(), iIndex);
+		return iIndex;
+	}
+
+	public void unregister(Class<?> iEntityClass) {
+		indexes.remove(iEntityClass);
+	}
+
+	/**
+	 * Return the index of the class, null if the class is not indexed.
+	 */
+	public FullTextIndex getIndex(Class<?> iEntityClass) {
+		return indexes.get(iEntityClass);
+	}
+
+	/**
+	 * Return the index of the class if it's built and can be queried, otherwise null.
+	 */
+	public FullTextIndex getReadyIndex(Class<?> iEntityClass) {
+		FullTextIndex index = indexes.get(iEntityClass);
+		return index != null && index.isBuilt() ? index : null;
+	}
+
+	public Collection<FullTextIndex> getIndexes() {
+		return indexes.values();
+	}
+
+	/**
+	 * Rebuild the index of the class from the repository.
+	 */
+	public void rebuild(Class<?> iEntityClass) {
+		FullTextIndex index = indexes.get(iEntityClass);
+		if (index != null)
+			index.rebuild();
+	}
+
+	public void rebuildAll() {
+		for (FullTextIndex index : indexes.values())
+			index.rebuild();
+	}
+
+	public void onEntitySaved(Object iEntity) {
+		String oid = null;
+		for (Class<?> cls = iEntity.getClass(); cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+			FullTextIndex index = indexes.get(cls);
+			if (index != null) {
+				if (oid == null)
+					oid = Roma.context().persistence().getOID(iEntity).trim();
+				index.index(oid, iEntity);
+			}
+		}
+	}
+
+	public void onEntityDeleted(Object iEntity) {
+		String oid = null;
+		for (Class<?> cls = iEntity.getClass(); cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+			FullTextIndex index = indexes.get(cls);
+			if (index != null) {
+				if (oid == null)
+					oid = Roma.context().persistence().getOID(iEntity).trim();
+				index.remove(oid);
+			}
+		}
+	}
+
+	public Tokenizer getTokenizer() {
+		return tokenizer;
+	}
+
+	/**
+	 * Set the tokenizer of the indexes registered from now on.
+	 */
+	public void setTokenizer(Tokenizer tokenizer) {
+		this.tokenizer = tokenizer;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.fulltext;
+
+import java.util.Set;
+
+import org.romaframework.aspect.persistence.QueryByFilterItem;
+
+/**
+ * Creates the predicate that restricts a query to a set of OIDs. Register an implementation as component to let the full-text
+ * search pass the OIDs found in the index to the datastore, instead of the field values.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public interface OIDFilterBuilder {
+
+	/**
+	 * Return the predicate matching only the objects with the OIDs received.
+	 * 
+	 * @param iEntityClass
+	 *          the class queried
+	 * @param iOIDs
+	 *          the OIDs, in the format returned by PersistenceAspect.getOID. If empty the predicate must match nothing.
+	 */
+	public QueryByFilterItem createOIDFilter(Class<?> iEntityClass, Set<String> iOIDs);
+}
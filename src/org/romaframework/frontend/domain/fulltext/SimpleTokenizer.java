@@ -0,0 +1,47 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.fulltext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tokenizer that splits the text on every character that is not a letter or a digit and converts the tokens to lower case.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class SimpleTokenizer implements Tokenizer {
+
+	public List<String> tokenize(String iText) {
+		List<String> tokens = new ArrayList<String>();
+		if (iText == null)
+			return tokens;
+
+		int start = -1;
+		for (int i = 0; i <= iText.length(); ++i) {
+			boolean tokenChar = i < iText.length() && Character.isLetterOrDigit(iText.charAt(i));
+			if (tokenChar && start == -1)
+				start = i;
+			else if (!tokenChar && start > -1) {
+				tokens.add(iText.substring(start, i).toLowerCase());
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ *
+ * Copyright 2009 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.domain.searchengine;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.romaframework.core.Roma;
+import org.romaframework.frontend.domain.crud.EntityWriteNotifier;
+
+/**
+ * Results of the search engine conditions of a session, by filter value. An entry expires after timeToLive milliseconds or as soon
+ * as an entity of its class is written through the frontend. When full, the least recently used entry is removed.
+ * 
+ */
+public class ConditionResultCache {
+
+	public static final String				SESSION_PROPERTY	= "ConditionResultCache";
+	public static final long					DEF_TIME_TO_LIVE	= 5 * 60 * 1000;
+	public static final int						DEF_MAX_ENTRIES		= 100;
+
+	protected long										timeToLive				= DEF_TIME_TO_LIVE;
+	protected int											maxEntries				= DEF_MAX_ENTRIES;
+	private long											hits;
+	private long											misses;
+
+	private Map<Object, CachedResult>	entries						= new LinkedHashMap<Object, CachedResult>(16, 0.75f, true) {
+		private static final long	serialVersionUID	= 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, CachedResult> eldest) {
+			return size() > maxEntries;
+		}
+	};
+
+	/**
+	 * Return the cache of the active session, creating it if needed.
+	 */
+	public static ConditionResultCache getSessionCache() {
+		ConditionResultCache cache = (ConditionResultCache) Roma.session().getProperty(SESSION_PROPERTY);
+		if (cache == null) {
+			cache = new ConditionResultCache();
+			Roma.session().setProperty(SESSION_PROPERTY, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Return the write version of the entity class. Read it before executing the condition and pass it to put.
+	 */
+	public long getVersion(Class<?> iEntityClass) {
+		return EntityWriteNotifier.getInstance().getVersion(iEntityClass);
+	}
+
+	/**
+	 * Return the cached result, null if missing, expired or invalidated by a write.
+	 */
+	public synchronized Set<String> get(Object iKey) {
+		CachedResult entry = entries.get(iKey);
+		if (entry != null && (System.currentTimeMillis() - entry.created > timeToLive || getVersion(entry.entityClass) != entry.version)) {
+			entries.remove(iKey);
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.oids;
+	}
+
+	public synchronized void put(Object iKey, Class<?> iEntityClass, long iVersion, Set<String> iOIDs) {
+		if (iOIDs == null || getVersion(iEntityClass) != iVersion)
+			// WRITTEN WHILE EXECUTING
+			return;
+		entries.put(iKey, new CachedResult(iEntityClass, iVersion, Collections.unmodifiableSet(iOIDs)));
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	public void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	private static class CachedResult {
+		private final Class<?>		entityClass;
+		private final long				version;
+		private final long				created	= System.currentTimeMillis();
+		private final Set<String>	oids;
+
+		public CachedResult(Class<?> iEntityClass, long iVersion, Set<String> iOIDs) {
+			entityClass = iEntityClass;
+			version = iVersion;
+			oids = iOIDs;
+		}
+	}
+}
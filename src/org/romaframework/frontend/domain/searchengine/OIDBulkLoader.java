@@ -0,0 +1,39 @@
+/*
+ *
+ * Copyright 2009 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.domain.searchengine;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads many objects by OID at once. Register an implementation as component to let SearchEngineMain load a page of results with a
+ * single call to the persistence layer instead of one per OID.
+ * 
+ */
+public interface OIDBulkLoader {
+
+	/**
+	 * Load the objects with the OIDs.
+	 * 
+	 * @param iOIDs
+	 *          the OIDs to load
+	 * @param iMode
+	 *          the loading mode, as in PersistenceAspect.loadObjectByOID
+	 * @return the objects loaded by OID. OIDs not found can be missing.
+	 */
+	public Map<String, Object> loadObjectsByOID(List<String> iOIDs, String iMode);
+}
@@ -0,0 +1,62 @@
+/*
+ *
+ * Copyright 2009 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.domain.searchengine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the OIDs to dense integers, starting from 0, to represent sets of OIDs as bitmaps. A dictionary lives for the evaluation of
+ * a search and the paging of its result.
+ * 
+ */
+public class OIDDictionary {
+
+	protected Map<String, Integer>	ids		= new HashMap<String, Integer>();
+	protected List<String>					oids	= new ArrayList<String>();
+
+	/**
+	 * Return the integer of the OID, assigning a new one if the OID is unknown.
+	 */
+	public synchronized int add(String iOID) {
+		Integer id = ids.get(iOID);
+		if (id == null) {
+			id = oids.size();
+			ids.put(iOID, id);
+			oids.add(iOID);
+		}
+		return id;
+	}
+
+	/**
+	 * Return the integer of the OID, -1 if unknown.
+	 */
+	public synchronized int getId(Object iOID) {
+		Integer id = ids.get(iOID);
+		return id != null ? id : -1;
+	}
+
+	public synchronized String getOID(int iId) {
+		return oids.get(iId);
+	}
+
+	public synchronized int size() {
+		return oids.size();
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ *
+ * Copyright 2009 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.domain.searchengine;
+
+import java.util.List;
+
+import org.romaframework.aspect.persistence.Query;
+
+/**
+ * Executes a query returning only the OIDs of the matching objects, without loading them. Register an implementation as component
+ * to let the filters that enable the OID projection avoid loading the entities.
+ * 
+ */
+public interface OIDQueryExecutor {
+
+	/**
+	 * Execute the query and return the OIDs of the objects found.
+	 * 
+	 * @param iQuery
+	 *          the query to execute
+	 * @return the OIDs, in the same format returned by PersistenceAspect.getOID
+	 */
+	public List<String> queryOIDs(Query iQuery);
+}
@@ -0,0 +1,196 @@
+/*
+ *
+ * Copyright 2009 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.domain.searchengine;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Set of OIDs stored as a bitmap over the integers of an OIDDictionary. Intersections and unions work on the bitmaps, the size is
+ * the bitmap cardinality and the OIDs are translated back only when read.
+ * 
+ */
+public class OIDSet extends AbstractSet<String> {
+
+	protected OIDDictionary	dictionary;
+	protected BitSet				bits;
+	private int							cardinality	= -1;
+	private int[]						positions;
+
+	public OIDSet(OIDDictionary iDictionary) {
+		this(iDictionary, new BitSet());
+	}
+
+	protected OIDSet(OIDDictionary iDictionary, BitSet iBits) {
+		dictionary = iDictionary;
+		bits = iBits;
+	}
+
+	/**
+	 * Return the OIDs as an OIDSet of the dictionary, converting them if needed.
+	 */
+	public static OIDSet valueOf(OIDDictionary iDictionary, Collection<String> iOIDs) {
+		if (iOIDs instanceof OIDSet && ((OIDSet) iOIDs).dictionary == iDictionary)
+			return (OIDSet) iOIDs;
+
+		OIDSet result = new OIDSet(iDictionary);
+		if (iOIDs != null)
+			for (String oid : iOIDs)
+				result.bits.set(iDictionary.add(oid));
+		return result;
+	}
+
+	/**
+	 * Keep only the OIDs contained in the other set.
+	 */
+	public void and(OIDSet iOther) {
+		checkDictionary(iOther);
+		bits.and(iOther.bits);
+		changed();
+	}
+
+	/**
+	 * Add all the OIDs of the other set.
+	 */
+	public void or(OIDSet iOther) {
+		checkDictionary(iOther);
+		bits.or(iOther.bits);
+		changed();
+	}
+
+	@Override
+	public int size() {
+		if (cardinality == -1)
+			cardinality = bits.cardinality();
+		return cardinality;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return bits.isEmpty();
+	}
+
+	@Override
+	public boolean contains(Object iOID) {
+		int id = dictionary.getId(iOID);
+		return id > -1 && bits.get(id);
+	}
+
+	@Override
+	public boolean add(String iOID) {
+		int id = dictionary.add(iOID);
+		if (bits.get(id))
+			return false;
+		bits.set(id);
+		changed();
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object iOID) {
+		int id = dictionary.getId(iOID);
+		if (id == -1 || !bits.get(id))
+			return false;
+		bits.clear(id);
+		changed();
+		return true;
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			private int	next	= bits.nextSetBit(0);
+			private int	last	= -1;
+
+			public boolean hasNext() {
+				return next > -1;
+			}
+
+			public String next() {
+				if (next == -1)
+					throw new NoSuchElementException();
+				last = next;
+				next = bits.nextSetBit(next + 1);
+				return dictionary.getOID(last);
+			}
+
+			public void remove() {
+				if (last == -1)
+					throw new IllegalStateException();
+				bits.clear(last);
+				last = -1;
+				changed();
+			}
+		};
+	}
+
+	/**
+	 * Return a read only list view of the OIDs, in the order of the dictionary. Only the OIDs read are translated, so a page can be
+	 * extracted with subList without translating the whole set.
+	 */
+	public List<String> asList() {
+		return new OIDList();
+	}
+
+	public OIDDictionary getDictionary() {
+		return dictionary;
+	}
+
+	protected void changed() {
+		cardinality = -1;
+		positions = null;
+	}
+
+	private void checkDictionary(OIDSet iOther) {
+		if (iOther.dictionary != dictionary)
+			throw new IllegalArgumentException("Cannot combine OID sets of different dictionaries");
+	}
+
+	private int[] getPositions() {
+		if (positions == null) {
+			int[] result = new int[size()];
+			int i = 0;
+			for (int bit = bits.nextSetBit(0); bit > -1; bit = bits.nextSetBit(bit + 1))
+				result[i++] = bit;
+			positions = result;
+		}
+		return positions;
+	}
+
+	private class OIDList extends AbstractList<String> implements RandomAccess {
+		@Override
+		public String get(int iIndex) {
+			return dictionary.getOID(getPositions()[iIndex]);
+		}
+
+		@Override
+		public int size() {
+			return OIDSet.this.size();
+		}
+
+		@Override
+		public boolean contains(Object iOID) {
+			return OIDSet.this.contains(iOID);
+		}
+	}
+}
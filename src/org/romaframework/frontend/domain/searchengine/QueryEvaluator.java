@@ -0,0 +1,472 @@
+/*
+ *
+ * Copyright 2009 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.domain.searchengine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.romaframework.aspect.persistence.PersistenceAspect;
+import org.romaframework.aspect.persistence.QueryByFilter;
+import org.romaframework.aspect.persistence.QueryByFilterItemGroup;
+import org.romaframework.core.Roma;
+import org.romaframework.frontend.domain.crud.CRUDException;
+import org.romaframework.frontend.domain.searchengine.filter.AbstractBaseFilter;
+import org.romaframework.frontend.domain.searchengine.filter.BaseFilter;
+import org.romaframework.frontend.util.BackgroundExecutor;
+
+/**
+ * Evaluates the conditions of a QueryOperation as an expression tree. Operators are applied left to right as QueryOperation always
+ * did. A chain that can only be ANDed with an empty result stops without evaluating the remaining conditions. In parallel mode all
+ * the conditions are submitted to the BackgroundExecutor at once and the tree is combined on the calling thread: each condition
+ * evaluated by a pool thread uses the PersistenceAspect of its own Roma context. AND chains wait for their conditions in completion order: the first empty
+ * result cancels the conditions still running.
+ * 
+ */
+public class QueryEvaluator {
+
+	protected Node												root;
+	protected boolean											parallel;
+	protected ConditionResultCache				resultCache;
+	protected Map<QueryCondition, Long>	timings	= new LinkedHashMap<QueryCondition, Long>();
+	protected CompletionService<OIDSet>	completion;
+
+	private static final Log							log			= LogFactory.getLog(QueryEvaluator.class);
+
+	public QueryEvaluator(List<QueryItem> iOperation, boolean iParallel) {
+		this(iOperation, iParallel, false);
+	}
+
+	/**
+	 * @param iPlanning
+	 *          if true the conditions on the same entity class that can be expressed as QueryByFilter items are merged in a single
+	 *          query, the others are combined in memory.
+	 */
+	public QueryEvaluator(List<QueryItem> iOperation, boolean iParallel, boolean iPlanning) {
+		root = parse(iOperation);
+		parallel = iParallel;
+		if (iPlanning && root != null)
+			root = plan(root);
+	}
+
+	/**
+	 * Evaluate the expression.
+	 * 
+	 * @return the OIDs found, null if there are no conditions.
+	 */
+	public OIDSet evaluate(final PersistenceAspect iDb, final OIDDictionary iDictionary) {
+		if (root == null)
+			return null;
+
+		completion = null;
+		if (parallel) {
+			List<Leaf> leaves = new ArrayList<Leaf>();
+			root.collectLeaves(leaves);
+			if (leaves.size() > 1) {
+				completion = new ExecutorCompletionService<OIDSet>(BackgroundExecutor.getInstance().getExecutor());
+				final Thread caller = Thread.currentThread();
+				for (final Leaf leaf : leaves)
+					leaf.future = completion.submit(BackgroundExecutor.getInstance().inContext(new Callable<OIDSet>() {
+						public OIDSet call() throws Exception {
+							// THE PERSISTENCE OF THE CALLER IS NOT THREAD SAFE: A POOL THREAD USES THE ONE OF ITS CONTEXT
+							PersistenceAspect db = Thread.currentThread() == caller ? iDb : Roma.context().persistence();
+							return leaf.execute(db, iDictionary);
+						}
+					}));
+			}
+		}
+
+		try {
+			return root.evaluate(iDb, iDictionary);
+		} finally {
+			if (log.isDebugEnabled())
+				log.debug("[QueryEvaluator.evaluate] Condition timings (ms): " + getTimings());
+		}
+	}
+
+	/**
+	 * Set the cache of the condition results, null to disable it. It must be set on the calling thread.
+	 */
+	public void setResultCache(ConditionResultCache iResultCache) {
+		resultCache = iResultCache;
+	}
+
+	/**
+	 * Return the milliseconds spent by each condition evaluated. Conditions skipped because of an empty AND chain are missing.
+	 */
+	public Map<QueryCondition, Long> getTimings() {
+		synchronized (timings) {
+			return new LinkedHashMap<QueryCondition, Long>(timings);
+		}
+	}
+
+	protected Node parse(List<QueryItem> iOperation) {
+		Branch branch = new Branch();
+		String operationMode = null;
+		for (int i = 0; i < iOperation.size(); i++) {
+			QueryItem item = iOperation.get(i);
+			if (item instanceof QueryOperator) {
+				operationMode = ((QueryOperator) item).getOperator();
+			} else if (item instanceof QuerySubOperationDelimiter) {
+				int end = iOperation.indexOf(((QuerySubOperationDelimiter) item).getConnectedDelimiter());
+				Node child = parse(iOperation.subList(i + 1, end));
+				if (child != null)
+					branch.add(operationMode, child);
+				i = end;
+			} else {
+				branch.add(operationMode, new Leaf((QueryCondition) item));
+			}
+		}
+		if (branch.children.isEmpty())
+			return null;
+		return branch.children.size() == 1 ? branch.children.get(0) : branch;
+	}
+
+	/**
+	 * Merge the mergeable conditions of the node. In a branch with a single operator all the conditions of the same entity class are
+	 * merged, otherwise only the leading ones since operators are applied left to right.
+	 */
+	protected Node plan(Node iNode) {
+		if (!(iNode instanceof Branch))
+			return iNode;
+
+		Branch branch = (Branch) iNode;
+		List<Node> children = new ArrayList<Node>();
+		for (Node child : branch.children)
+			children.add(plan(child));
+
+		Branch result = new Branch();
+		if (branch.isSingleOperator()) {
+			Map<Class<?>, Integer> positions = new HashMap<Class<?>, Integer>();
+			for (int i = 0; i < children.size(); ++i) {
+				Node child = children.get(i);
+				MergedLeaf merged = toMerged(child);
+				Integer position = merged != null ? positions.get(merged.entityClass) : null;
+				if (position != null) {
+					MergedLeaf previous = toMerged(result.children.get(position));
+					result.children.set(position, previous.merge(branch.operators.get(i), merged));
+				} else {
+					if (merged != null)
+						positions.put(merged.entityClass, result.children.size());
+					result.add(branch.operators.get(i), child);
+				}
+			}
+		} else {
+			MergedLeaf merged = toMerged(children.get(0));
+			int i = 1;
+			for (; merged != null && i < children.size(); ++i) {
+				MergedLeaf next = toMerged(children.get(i));
+				if (next == null || next.entityClass != merged.entityClass)
+					break;
+				merged = merged.merge(branch.operators.get(i), next);
+			}
+			result.add(null, i > 1 ? merged : children.get(0));
+			for (; i < children.size(); ++i)
+				result.add(branch.operators.get(i), children.get(i));
+		}
+
+		// A SINGLE MERGED QUERY CAN BE MERGED AGAIN IN THE PARENT
+		return result.children.size() == 1 ? result.children.get(0) : result;
+	}
+
+	/**
+	 * Return the node as a mergeable query, null if not mergeable.
+	 */
+	protected MergedLeaf toMerged(Node iNode) {
+		if (iNode instanceof MergedLeaf)
+			return (MergedLeaf) iNode;
+		if (!(iNode instanceof Leaf) || !(((Leaf) iNode).condition.getEntity() instanceof AbstractBaseFilter<?>))
+			return null;
+
+		QueryCondition condition = ((Leaf) iNode).condition;
+		QueryByFilterItemGroup items = ((AbstractBaseFilter<?>) condition.getEntity()).getFilterItems();
+		if (items == null)
+			return null;
+		return new MergedLeaf(condition, items);
+	}
+
+	/**
+	 * Wait for the next condition evaluated in background to complete, in any order.
+	 */
+	protected void awaitCompletion() {
+		try {
+			completion.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CRUDException("Interrupted while evaluating the conditions", e);
+		}
+	}
+
+	protected abstract class Node {
+		public abstract OIDSet evaluate(PersistenceAspect iDb, OIDDictionary iDictionary);
+
+		public abstract void collectLeaves(List<Leaf> iLeaves);
+
+		public abstract void cancel();
+
+		/**
+		 * Return true if the node has nothing left to wait for in background.
+		 */
+		public abstract boolean isDone();
+
+		/**
+		 * Return true if the node has already been evaluated in background with an empty result.
+		 */
+		public boolean isKnownEmpty() {
+			return false;
+		}
+	}
+
+	protected class Leaf extends Node {
+		protected QueryCondition		condition;
+		protected Future<OIDSet>	future;
+
+		public Leaf(QueryCondition iCondition) {
+			condition = iCondition;
+		}
+
+		@Override
+		public OIDSet evaluate(PersistenceAspect iDb, OIDDictionary iDictionary) {
+			if (future == null)
+				return execute(iDb, iDictionary);
+
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CRUDException("Interrupted while evaluating the condition: " + condition, e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new CRUDException("Error on evaluating the condition: " + condition, cause);
+			}
+		}
+
+		protected OIDSet execute(PersistenceAspect iDb, OIDDictionary iDictionary) {
+			long start = System.currentTimeMillis();
+			BaseFilter<?> filter = condition.getEntity();
+			Object key = resultCache != null && filter instanceof AbstractBaseFilter<?> ? ((AbstractBaseFilter<?>) filter).createResultCacheKey() : null;
+
+			Set<String> result = key != null ? resultCache.get(key) : null;
+			if (result == null) {
+				long version = key != null ? resultCache.getVersion(filter.getEntityClass()) : 0;
+				result = filter.executeQuery(iDb, null);
+				if (key != null)
+					resultCache.put(key, filter.getEntityClass(), version, result);
+			}
+
+			long elapsed = System.currentTimeMillis() - start;
+			synchronized (timings) {
+				timings.put(condition, elapsed);
+			}
+			return OIDSet.valueOf(iDictionary, result);
+		}
+
+		@Override
+		public void collectLeaves(List<Leaf> iLeaves) {
+			iLeaves.add(this);
+		}
+
+		@Override
+		public void cancel() {
+			if (future != null)
+				future.cancel(true);
+		}
+
+		@Override
+		public boolean isDone() {
+			return future == null || future.isDone();
+		}
+
+		@Override
+		public boolean isKnownEmpty() {
+			if (future == null || !future.isDone() || future.isCancelled())
+				return false;
+			try {
+				return future.get().isEmpty();
+			} catch (Exception e) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Conditions merged in a single QueryByFilter. A MergedLeaf with a single condition is just a candidate for the merge and is never
+	 * evaluated.
+	 */
+	protected class MergedLeaf extends Leaf {
+		protected Class<?>								entityClass;
+		protected QueryByFilterItemGroup	items;
+		protected String									predicate;
+		protected List<QueryCondition>		conditions	= new ArrayList<QueryCondition>();
+
+		public MergedLeaf(QueryCondition iCondition, QueryByFilterItemGroup iItems) {
+			super(iCondition);
+			entityClass = iCondition.getEntity().getEntityClass();
+			items = iItems;
+			conditions.add(iCondition);
+		}
+
+		protected MergedLeaf(MergedLeaf iSource, String iOperator, MergedLeaf iOther) {
+			super(iSource.condition);
+			entityClass = iSource.entityClass;
+			predicate = QueryOperator.OPERATOR_AND.equals(iOperator) ? QueryByFilter.PREDICATE_AND : QueryByFilter.PREDICATE_OR;
+			if (predicate.equals(iSource.predicate))
+				items = iSource.items;
+			else {
+				items = new QueryByFilterItemGroup(predicate);
+				items.addItem(iSource.items);
+			}
+			items.addItem(iOther.items);
+			conditions.addAll(iSource.conditions);
+			conditions.addAll(iOther.conditions);
+		}
+
+		public MergedLeaf merge(String iOperator, MergedLeaf iOther) {
+			return new MergedLeaf(this, iOperator, iOther);
+		}
+
+		@Override
+		protected OIDSet execute(PersistenceAspect iDb, OIDDictionary iDictionary) {
+			long start = System.currentTimeMillis();
+			QueryByFilter query = new QueryByFilter(entityClass, QueryByFilter.PREDICATE_AND);
+			query.setStrategy(condition.getEntity().getQueryStrategy());
+			query.addItem(items);
+
+			OIDSet result = new OIDSet(iDictionary);
+			if (Roma.existComponent(OIDQueryExecutor.class)) {
+				for (String oid : Roma.component(OIDQueryExecutor.class).queryOIDs(query))
+					result.add(oid.trim());
+			} else {
+				for (Object entity : iDb.query(query))
+					result.add(iDb.getOID(entity).trim());
+			}
+
+			long elapsed = System.currentTimeMillis() - start;
+			synchronized (timings) {
+				for (QueryCondition c : conditions)
+					timings.put(c, elapsed);
+			}
+			if (log.isDebugEnabled())
+				log.debug("[QueryEvaluator.execute] Merged " + conditions.size() + " conditions on " + entityClass.getSimpleName() + " in " + elapsed + "ms");
+			return result;
+		}
+	}
+
+	protected class Branch extends Node {
+		protected List<String>	operators	= new ArrayList<String>();
+		protected List<Node>		children	= new ArrayList<Node>();
+
+		public void add(String iOperator, Node iChild) {
+			operators.add(iOperator);
+			children.add(iChild);
+		}
+
+		@Override
+		public OIDSet evaluate(PersistenceAspect iDb, OIDDictionary iDictionary) {
+			if (completion != null && children.size() > 1 && isOnlyAnd(1))
+				// WAIT THE CONDITIONS AS THEY COMPLETE: THE FIRST EMPTY ONE STOPS THE CHAIN
+				while (!isDone() && !isKnownEmpty(0))
+					awaitCompletion();
+
+			OIDSet result = null;
+			for (int i = 0; i < children.size(); ++i) {
+				if (isOnlyAnd(Math.max(i, 1)) && (result != null && result.isEmpty() || isKnownEmpty(i))) {
+					// THE REST OF THE CHAIN CANNOT ADD ANYTHING
+					for (int j = i; j < children.size(); ++j)
+						children.get(j).cancel();
+					return new OIDSet(iDictionary);
+				}
+
+				OIDSet childResult = children.get(i).evaluate(iDb, iDictionary);
+				if (result == null)
+					result = childResult;
+				else if (childResult == null) {
+					// EMPTY SUB OPERATION
+				} else if (QueryOperator.OPERATOR_AND.equals(operators.get(i)))
+					result.and(childResult);
+				else
+					result.or(childResult);
+			}
+			return result;
+		}
+
+		public boolean isSingleOperator() {
+			for (int i = 2; i < operators.size(); ++i)
+				if (!operators.get(1).equals(operators.get(i)))
+					return false;
+			return true;
+		}
+
+		private boolean isKnownEmpty(int iFrom) {
+			for (int i = iFrom; i < children.size(); ++i)
+				if (children.get(i).isKnownEmpty())
+					return true;
+			return false;
+		}
+
+		private boolean isOnlyAnd(int iFrom) {
+			for (int i = iFrom; i < operators.size(); ++i)
+				if (!QueryOperator.OPERATOR_AND.equals(operators.get(i)))
+					return false;
+			return true;
+		}
+
+		@Override
+		public void collectLeaves(List<Leaf> iLeaves) {
+			for (Node child : children)
+				child.collectLeaves(iLeaves);
+		}
+
+		@Override
+		public boolean isDone() {
+			for (Node child : children)
+				if (!child.isDone())
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean isKnownEmpty() {
+			if (isOnlyAnd(1))
+				return isKnownEmpty(0);
+			if (!isSingleOperator() || !QueryOperator.OPERATOR_OR.equals(operators.get(1)))
+				return false;
+			for (Node child : children)
+				if (!child.isKnownEmpty())
+					return false;
+			return true;
+		}
+
+		@Override
+		public void cancel() {
+			for (Node child : children)
+				child.cancel();
+		}
+	}
+}
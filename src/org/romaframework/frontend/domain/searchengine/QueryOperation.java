@@ -69,30 +69,80 @@ public class QueryOperation implements ViewCallback {
 	@ViewField(visible = AnnotationConstants.FALSE)
 	protected Integer							positionToAdd	= 0;
 
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected boolean										parallel;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected boolean										planning;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected boolean										resultCaching;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected Map<QueryCondition, Long>	lastTimings;
+
 	private final static Log			logger				= LogFactory.getLog(QueryOperation.class);
 
 	public Set<String> executeQuery(PersistenceAspect db) {
-		Set<String> result = null;
-		String operationMode = null;
-		if (operation.size() == 0)
-			return null;
-		for (int i = 0; i < operation.size(); i++) {
-			QueryItem item = operation.get(i);
-			if (item instanceof QueryOperator) {
-				operationMode = ((QueryOperator) item).getOperator();
-				continue;
-			} else if (item instanceof QuerySubOperationDelimiter) {
-				QuerySubOperationDelimiter start = (QuerySubOperationDelimiter) item;
-				QuerySubOperationDelimiter end = start.getConnectedDelimiter();
-				QueryOperation subOperation = new QueryOperation();
-				subOperation.setOperation(operation.subList(start.getPosition() + 1, end.getPosition()));
-				result = updateResult(result, operationMode, subOperation.executeQuery(db));
-				i = end.getPosition();
-			} else {
-				result = updateResult(result, operationMode, ((QueryCondition) operation.get(i)).getEntity().executeQuery(db,null));
-			}
+		return executeQuery(db, new OIDDictionary());
+	}
+
+	/**
+	 * Execute the conditions combining their results as bitmaps of the dictionary.
+	 * 
+	 * @return the OIDs found, null if there are no conditions.
+	 */
+	public OIDSet executeQuery(PersistenceAspect db, OIDDictionary dictionary) {
+		QueryEvaluator evaluator = new QueryEvaluator(operation, parallel, planning);
+		if (resultCaching)
+			evaluator.setResultCache(ConditionResultCache.getSessionCache());
+		try {
+			return evaluator.evaluate(db, dictionary);
+		} finally {
+			lastTimings = evaluator.getTimings();
 		}
-		return result;
+	}
+
+	/**
+	 * Return the milliseconds spent by each condition in the last execution.
+	 */
+	public Map<QueryCondition, Long> getLastTimings() {
+		return lastTimings;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Evaluate the conditions concurrently. The persistence aspect must support concurrent queries.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public boolean isPlanning() {
+		return planning;
+	}
+
+	/**
+	 * Merge the conditions on the same entity class in a single QueryByFilter. The merged conditions match by equality on the fields
+	 * set, which can differ from the QueryByExample semantic of the persistence module.
+	 */
+	public void setPlanning(boolean planning) {
+		this.planning = planning;
+	}
+
+	public boolean isResultCaching() {
+		return resultCaching;
+	}
+
+	/**
+	 * Reuse the results of the conditions not changed since the previous searches of the session. Results expire after a time and
+	 * when their entity class is written through the frontend.
+	 */
+	public void setResultCaching(boolean resultCaching) {
+		this.resultCaching = resultCaching;
 	}
 
 	public void onShow() {
@@ -282,17 +332,6 @@ public class QueryOperation implements ViewCallback {
 		}
 	}
 
-	private Set<String> updateResult(Set<String> result, String operationMode, Set<String> queryResult) {
-		if (result == null) {
-			result = queryResult;
-		} else if (operationMode.equals(QueryOperator.OPERATOR_AND)) {
-			result.retainAll(queryResult);
-		} else {
-			result.addAll(queryResult);
-		}
-		return result;
-	}
-
 	protected void updateOperationAfterRemove(Integer position) {
 		int operationSize = operation.size();
 		if (operationSize == 2 && isQuerySubOperation(operation.get(0)) && isQuerySubOperation(operation.get(1)))
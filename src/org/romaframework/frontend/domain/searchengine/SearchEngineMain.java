@@ -17,7 +17,10 @@
 package org.romaframework.frontend.domain.searchengine;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.romaframework.aspect.core.annotation.AnnotationConstants;
@@ -37,12 +40,26 @@ public abstract class SearchEngineMain<T> extends CRUDMain<T> {
 
 	public static final String	MAIN_FILTER_NAME	= "mainFilter";
 
+	public static final int			DEF_MAX_LOADED		= 1000;
+
 	protected QueryOperation		filter						= new QueryOperation();
 
 	protected List<String>			ids;
 
 	protected Class<T>					searchClass;
 
+	/**
+	 * Objects of the current result already loaded, by OID.
+	 */
+	protected Map<String, T>		loadedObjects			= new LinkedHashMap<String, T>(16, 0.75f, true) {
+		private static final long	serialVersionUID	= 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+			return size() > DEF_MAX_LOADED;
+		}
+	};
+
 	protected SearchEngineMain(Class<? extends ComposedEntity<?>> listClass, Class<? extends ComposedEntity<?>> createClass, Class<? extends ComposedEntity<?>> readClass,
 			Class<? extends ComposedEntity<?>> editClass, Class<T> iSearchClass) {
 		super(listClass, createClass, readClass, editClass);
@@ -64,7 +81,11 @@ public abstract class SearchEngineMain<T> extends CRUDMain<T> {
 	public void search() {
 		PersistenceAspect db = getPersistenceAspect();
 		Set<String> resultId = filter.executeQuery(db);
-		if (resultId != null)
+		loadedObjects.clear();
+		if (resultId instanceof OIDSet)
+			// TRANSLATE TO OIDS ONLY THE PAGES SHOWN
+			ids = ((OIDSet) resultId).asList();
+		else if (resultId != null)
 			ids = new ArrayList<String>(resultId);
 		else
 			ids = null;
@@ -105,6 +126,12 @@ public abstract class SearchEngineMain<T> extends CRUDMain<T> {
 		}
 	}
 
+	@Override
+	public boolean isKeysetAvailable() {
+		// IDS ARE PAGED IN MEMORY
+		return ids == null && super.isKeysetAvailable();
+	}
+
 	@Override
 	public void loadPage(int iFrom, int iTo) {
 		if (queryRequest == null) {
@@ -114,11 +141,59 @@ public abstract class SearchEngineMain<T> extends CRUDMain<T> {
 		Roma.fieldChanged(this, "paging");
 	}
 
+	@Override
+	public int size() {
+		return ids != null ? ids.size() : super.size();
+	}
+
+	@Override
+	public List<Object> fetch(int iFrom, int iCount) {
+		if (ids == null)
+			return super.fetch(iFrom, iCount);
+		List<Object> rows = new ArrayList<Object>();
+		if (iFrom < ids.size() && iCount > 0)
+			rows.addAll(createListableRows(loadResultFromIDs(ids.subList(iFrom, Math.min(iFrom + iCount, ids.size())))));
+		return rows;
+	}
+
+	@Override
+	protected void invalidatePageCache() {
+		super.invalidatePageCache();
+		loadedObjects.clear();
+	}
+
+	/**
+	 * Load the objects by OID keeping the order of the OIDs. The objects already loaded for the current result are reused, the others
+	 * are loaded with a single call if an OIDBulkLoader component is registered, otherwise one by one.
+	 */
+	@SuppressWarnings("unchecked")
 	protected List<T> loadResultFromIDs(List<String> ids) {
-		List<T> result = new ArrayList<T>();
+		Map<String, T> page = new HashMap<String, T>();
+		List<String> toLoad = new ArrayList<String>();
 		for (String id : ids) {
-			result.add((T) Roma.context().persistence().loadObjectByOID(id, PersistenceAspect.FULL_MODE_LOADING));
+			if (loadedObjects.containsKey(id))
+				page.put(id, loadedObjects.get(id));
+			else
+				toLoad.add(id);
 		}
+
+		if (!toLoad.isEmpty()) {
+			if (Roma.existComponent(OIDBulkLoader.class)) {
+				Map<String, Object> loaded = Roma.component(OIDBulkLoader.class).loadObjectsByOID(toLoad, PersistenceAspect.FULL_MODE_LOADING);
+				for (String id : toLoad)
+					page.put(id, (T) loaded.get(id));
+			} else {
+				for (String id : toLoad)
+					page.put(id, (T) Roma.context().persistence().loadObjectByOID(id, PersistenceAspect.FULL_MODE_LOADING));
+			}
+			for (String id : toLoad)
+				loadedObjects.put(id, page.get(id));
+		}
+
+		// RESTORE THE ORDER OF THE OIDS
+		List<T> result = new ArrayList<T>();
+		for (String id : ids)
+			result.add(page.get(id));
 		return result;
 	}
 
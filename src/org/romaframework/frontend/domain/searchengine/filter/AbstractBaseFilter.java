@@ -16,19 +16,34 @@
  */
 package org.romaframework.frontend.domain.searchengine.filter;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.romaframework.aspect.core.annotation.AnnotationConstants;
 import org.romaframework.aspect.flow.FlowAspect;
 import org.romaframework.aspect.persistence.PersistenceAspect;
 import org.romaframework.aspect.persistence.Query;
 import org.romaframework.aspect.persistence.QueryByExample;
+import org.romaframework.aspect.persistence.QueryByFilter;
+import org.romaframework.aspect.persistence.QueryByFilterItemGroup;
 import org.romaframework.aspect.view.annotation.ViewAction;
 import org.romaframework.aspect.view.annotation.ViewField;
 import org.romaframework.core.Roma;
+import org.romaframework.core.schema.SchemaClass;
+import org.romaframework.core.schema.SchemaField;
+import org.romaframework.core.schema.SchemaHelper;
 import org.romaframework.frontend.domain.entity.ComposedEntityInstance;
+import org.romaframework.frontend.domain.searchengine.OIDQueryExecutor;
 import org.romaframework.frontend.domain.searchengine.QueryCondition;
 
 /**
@@ -38,7 +53,14 @@ import org.romaframework.frontend.domain.searchengine.QueryCondition;
 public abstract class AbstractBaseFilter<T> extends ComposedEntityInstance<T> implements BaseFilter<T> {
 
 	@ViewField(visible = AnnotationConstants.FALSE)
-	protected byte	queryStrategy	= PersistenceAspect.STRATEGY_STANDARD;
+	protected byte															queryStrategy			= PersistenceAspect.STRATEGY_STANDARD;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected boolean														oidProjection;
+
+	private static final String[]								QUERY_METHODS			= { "executeQuery", "retainObjects", "processResults", "getFilterQuery" };
+
+	private static final Map<Class<?>, Boolean>	customizedClasses	= new ConcurrentHashMap<Class<?>, Boolean>();
 
 	public AbstractBaseFilter(T iEntity) {
 		super(iEntity);
@@ -49,6 +71,12 @@ public abstract class AbstractBaseFilter<T> extends ComposedEntityInstance<T> im
 		Set<String> result = new TreeSet<String>();
 		Query query = getFilterQuery();
 		query.setStrategy(queryStrategy);
+		if (oidProjection && Roma.existComponent(OIDQueryExecutor.class)) {
+			// READ ONLY THE OIDS WITHOUT LOADING THE ENTITIES
+			for (String oid : Roma.component(OIDQueryExecutor.class).queryOIDs(query))
+				result.add(oid.trim());
+			return result;
+		}
 		List<Object> employees = retainObjects(db, query);
 		processResults(db, result, employees,context);
 		return result;
@@ -86,6 +114,18 @@ public abstract class AbstractBaseFilter<T> extends ComposedEntityInstance<T> im
 		this.queryStrategy = queryStrategy;
 	}
 
+	public boolean isOidProjection() {
+		return oidProjection;
+	}
+
+	/**
+	 * Enable the query of the OIDs only, without loading the entities. Requires an OIDQueryExecutor component, otherwise the entities
+	 * are loaded as usual. Filters that override processResults to read the entities must not enable it.
+	 */
+	public void setOidProjection(boolean oidProjection) {
+		this.oidProjection = oidProjection;
+	}
+
 	@Override
 	public abstract String toString();
 
@@ -115,4 +155,117 @@ public abstract class AbstractBaseFilter<T> extends ComposedEntityInstance<T> im
 		return QueryCondition.class;
 	}
 
+	/**
+	 * Return the filter as items of a QueryByFilter, to let the search engine merge it with the other filters of the same entity
+	 * class in a single query. By default it's the equality on the not empty persistent fields of the entity. It's null (not
+	 * mergeable) if the filter customizes its query, has no fields set, or sets a field that the QueryByExample doesn't match by
+	 * equality: see isMatchedByEquality(). Primitive fields set to their default value are ignored as the QueryByExample does.
+	 */
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public QueryByFilterItemGroup getFilterItems() {
+		if (isQueryCustomized())
+			return null;
+
+		QueryByFilterItemGroup items = new QueryByFilterItemGroup(QueryByFilter.PREDICATE_AND);
+		SchemaClass schema = Roma.schema().getSchemaClass(entity.getClass());
+		Iterator<SchemaField> iterator = schema.getFieldIterator();
+		while (iterator.hasNext()) {
+			SchemaField field = iterator.next();
+			if (!Roma.context().persistence().isFieldPersistent(field))
+				continue;
+
+			Object value = field.getValue(entity);
+			if (value == null || "".equals(value) || isPrimitiveDefault(field, value))
+				continue;
+			if (SchemaHelper.isMultiValueObject(field) || value instanceof Collection<?> || value instanceof Map<?, ?>) {
+				if (isEmpty(value))
+					continue;
+				// A COLLECTION SET IN THE EXAMPLE CANNOT BE EXPRESSED AS EQUALITY
+				return null;
+			}
+			if (!isMatchedByEquality(field, value))
+				return null;
+			items.addItem(field.getName(), QueryByFilter.FIELD_EQUALS, value);
+		}
+		return items.getItems().isEmpty() ? null : items;
+	}
+
+	/**
+	 * Return true if the QueryByExample of the filter matches the value of the field by equality, so it can be merged as a
+	 * FIELD_EQUALS item. By default numbers, booleans, characters, dates and enums; Strings and referenced or embedded objects are
+	 * matched by the datastore with its own rules. Override it if the PersistenceAspect in use matches other types by equality.
+	 */
+	protected boolean isMatchedByEquality(SchemaField iField, Object iValue) {
+		return iValue instanceof Number || iValue instanceof Boolean || iValue instanceof Character || iValue instanceof Date
+				|| iValue instanceof Enum<?>;
+	}
+
+	private static boolean isPrimitiveDefault(SchemaField iField, Object iValue) {
+		if (!(iField.getLanguageType() instanceof Class<?>) || !((Class<?>) iField.getLanguageType()).isPrimitive())
+			return false;
+		if (iValue instanceof Boolean)
+			return !((Boolean) iValue).booleanValue();
+		if (iValue instanceof Character)
+			return ((Character) iValue).charValue() == 0;
+		return iValue instanceof Number && ((Number) iValue).doubleValue() == 0;
+	}
+
+	private static boolean isEmpty(Object iValue) {
+		if (iValue instanceof Collection<?>)
+			return ((Collection<?>) iValue).isEmpty();
+		if (iValue instanceof Map<?, ?>)
+			return ((Map<?, ?>) iValue).isEmpty();
+		if (iValue instanceof Object[])
+			return ((Object[]) iValue).length == 0;
+		return false;
+	}
+
+	/**
+	 * Return a snapshot of the filter values to cache its result, null if the result cannot be cached because the filter customizes
+	 * its query.
+	 */
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public Object createResultCacheKey() {
+		if (isQueryCustomized())
+			return null;
+
+		List<Object> key = new ArrayList<Object>();
+		key.add(getClass());
+		key.add(entity.getClass());
+		key.add(queryStrategy);
+		key.add(oidProjection);
+		SchemaClass schema = Roma.schema().getSchemaClass(entity.getClass());
+		Iterator<SchemaField> iterator = schema.getFieldIterator();
+		while (iterator.hasNext()) {
+			SchemaField field = iterator.next();
+			Object value = field.getValue(entity);
+			if (value instanceof Collection<?>)
+				value = new ArrayList<Object>((Collection<?>) value);
+			else if (value instanceof Map<?, ?>)
+				value = new HashMap<Object, Object>((Map<?, ?>) value);
+			else if (value instanceof Object[])
+				value = Arrays.asList(((Object[]) value).clone());
+			key.add(field.getName());
+			key.add(value);
+		}
+		return key;
+	}
+
+	/**
+	 * Return true if the class overrides how the query is built or executed.
+	 */
+	protected boolean isQueryCustomized() {
+		Boolean customized = customizedClasses.get(getClass());
+		if (customized == null) {
+			customized = false;
+			for (Class<?> cls = getClass(); cls != AbstractBaseFilter.class && !customized; cls = cls.getSuperclass())
+				for (Method method : cls.getDeclaredMethods())
+					for (String name : QUERY_METHODS)
+						if (method.getName().equals(name))
+							customized = true;
+			customizedClasses.put(getClass(), customized);
+		}
+		return customized;
+	}
+
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.typeahead;
+
+import java.util.Collection;
+
+/**
+ * Type-ahead over a collection of elements already loaded, indexed once in a PrefixIndex when created.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class ListTypeAhead<T> implements TypeAheadProvider<T> {
+
+	protected PrefixIndex<T>	index;
+	protected boolean					contains;
+
+	/**
+	 * @param iContains
+	 *          if true also the elements containing the text are suggested, after the ones starting with it.
+	 */
+	public ListTypeAhead(Collection<T> iElements, boolean iContains) {
+		index = new PrefixIndex<T>(iElements);
+		contains = iContains;
+	}
+
+	public TypeAheadResult<T> search(String iText, String iContinuation, int iLimit) {
+		int offset = iContinuation != null ? Integer.parseInt(iContinuation) : 0;
+		return index.search(iText, contains, offset, iLimit);
+	}
+}
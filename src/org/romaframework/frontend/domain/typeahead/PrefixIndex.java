@@ -0,0 +1,125 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.typeahead;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable index of elements sorted by label, to find the elements whose label starts with a text by binary search. The label is
+ * the lower case toString() of the element.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class PrefixIndex<T> {
+
+	private final String[]	keys;
+	private final Object[]	elements;
+
+	public PrefixIndex(Collection<T> iElements) {
+		Object[][] entries = new Object[iElements.size()][];
+		int i = 0;
+		for (T element : iElements)
+			entries[i++] = new Object[] { element != null ? element.toString().toLowerCase() : "", element };
+
+		Arrays.sort(entries, new Comparator<Object[]>() {
+			public int compare(Object[] o1, Object[] o2) {
+				return ((String) o1[0]).compareTo((String) o2[0]);
+			}
+		});
+
+		keys = new String[entries.length];
+		elements = new Object[entries.length];
+		for (i = 0; i < entries.length; ++i) {
+			keys[i] = (String) entries[i][0];
+			elements[i] = entries[i][1];
+		}
+	}
+
+	/**
+	 * Return a page of the elements matching the text: first the ones starting with it, sorted by label, then, if iContains is true,
+	 * the others containing it.
+	 * 
+	 * @param iOffset
+	 *          number of matching elements to skip
+	 */
+	@SuppressWarnings("unchecked")
+	public TypeAheadResult<T> search(String iText, boolean iContains, int iOffset, int iLimit) {
+		String text = iText != null ? iText.toLowerCase() : "";
+		int from = lowerBound(text);
+		int to = lowerBound(text + Character.MAX_VALUE);
+
+		List<T> result = new ArrayList<T>();
+		int skip = iOffset;
+		boolean more = false;
+
+		// PREFIX MATCHES
+		int prefixMatches = to - from;
+		if (skip < prefixMatches) {
+			for (int i = from + skip; i < to && !more; ++i) {
+				if (result.size() == iLimit)
+					more = true;
+				else
+					result.add((T) elements[i]);
+			}
+			skip = 0;
+		} else
+			skip -= prefixMatches;
+
+		// CONTAINS MATCHES
+		if (iContains && !more && text.length() > 0) {
+			for (int i = 0; i < keys.length && !more; ++i) {
+				if (i == from && to > from) {
+					// ALREADY RETURNED AS PREFIX MATCHES
+					i = to - 1;
+					continue;
+				}
+				if (keys[i].indexOf(text) > -1) {
+					if (skip > 0)
+						skip--;
+					else if (result.size() == iLimit)
+						more = true;
+					else
+						result.add((T) elements[i]);
+				}
+			}
+		}
+
+		return new TypeAheadResult<T>(result, more ? String.valueOf(iOffset + result.size()) : null);
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	private int lowerBound(String iKey) {
+		int low = 0;
+		int high = keys.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid].compareTo(iKey) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+}
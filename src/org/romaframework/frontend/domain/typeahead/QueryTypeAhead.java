@@ -0,0 +1,59 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.typeahead;
+
+import java.util.List;
+
+import org.romaframework.aspect.persistence.PersistenceAspect;
+import org.romaframework.aspect.persistence.QueryByFilter;
+import org.romaframework.core.Roma;
+
+/**
+ * Type-ahead that queries the datastore for the instances whose field is LIKE the text, sorted by the field. Only a page is loaded
+ * every time.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class QueryTypeAhead<T> implements TypeAheadProvider<T> {
+
+	protected Class<T>	entityClass;
+	protected String		fieldName;
+
+	public QueryTypeAhead(Class<T> iEntityClass, String iFieldName) {
+		entityClass = iEntityClass;
+		fieldName = iFieldName;
+	}
+
+	public TypeAheadResult<T> search(String iText, String iContinuation, int iLimit) {
+		int offset = iContinuation != null ? Integer.parseInt(iContinuation) : 0;
+
+		QueryByFilter filter = new QueryByFilter(entityClass);
+		if (iText != null && iText.length() > 0)
+			filter.addItem(fieldName, QueryByFilter.FIELD_LIKE, iText);
+		filter.addOrder(fieldName);
+		filter.setStrategy(PersistenceAspect.STRATEGY_DETACHING);
+		// ONE MORE ELEMENT TO KNOW IF THERE IS A NEXT PAGE
+		filter.setRangeFrom(offset, offset + iLimit + 1);
+
+		List<T> result = Roma.context().persistence().query(filter);
+		boolean more = result.size() > iLimit;
+		if (more)
+			result = result.subList(0, iLimit);
+		return new TypeAheadResult<T>(result, more ? String.valueOf(offset + iLimit) : null);
+	}
+}
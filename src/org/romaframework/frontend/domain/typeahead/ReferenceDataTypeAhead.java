@@ -0,0 +1,80 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.typeahead;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.romaframework.frontend.util.ReferenceDataCache;
+
+/**
+ * Type-ahead over all the instances of a class, kept in memory in a PrefixIndex. Use it for the classes registered in the
+ * ReferenceDataCache: the index is built on the shared snapshot of the instances and rebuilt only when the snapshot changes. The
+ * elements found are returned as copies owned by the caller.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class ReferenceDataTypeAhead<T> implements TypeAheadProvider<T> {
+
+	protected Class<T>										referenceClass;
+	protected ReferenceDataCache.Loader<T>	loader;
+	protected boolean											contains;
+
+	private ReferenceDataCache.Snapshot<T>	indexedSnapshot;
+	private Map<T, Integer>								positions;
+	private PrefixIndex<T>								index;
+
+	/**
+	 * @param iContains
+	 *          if true also the elements containing the text are suggested, after the ones starting with it.
+	 */
+	public ReferenceDataTypeAhead(Class<T> iClass, ReferenceDataCache.Loader<T> iLoader, boolean iContains) {
+		referenceClass = iClass;
+		loader = iLoader;
+		contains = iContains;
+	}
+
+	public TypeAheadResult<T> search(String iText, String iContinuation, int iLimit) {
+		int offset = iContinuation != null ? Integer.parseInt(iContinuation) : 0;
+		ReferenceDataCache.Snapshot<T> snapshot = ReferenceDataCache.getInstance().getSnapshot(referenceClass, loader);
+		if (snapshot == null)
+			// NOT CACHEABLE: SEARCH THE INSTANCES JUST LOADED, ALREADY OWNED BY THE CALLER
+			return new PrefixIndex<T>(loader.load()).search(iText, contains, offset, iLimit);
+
+		TypeAheadResult<T> shared;
+		Map<T, Integer> currentPositions;
+		synchronized (this) {
+			if (snapshot != indexedSnapshot) {
+				index = new PrefixIndex<T>(snapshot.getElements());
+				positions = new IdentityHashMap<T, Integer>();
+				for (int i = 0; i < snapshot.getElements().size(); ++i)
+					positions.put(snapshot.getElements().get(i), i);
+				indexedSnapshot = snapshot;
+			}
+			shared = index.search(iText, contains, offset, iLimit);
+			currentPositions = positions;
+		}
+
+		List<T> copies = new ArrayList<T>(shared.getItems().size());
+		for (T element : shared.getItems())
+			copies.add(snapshot.copy(currentPositions.get(element)));
+		return new TypeAheadResult<T>(copies, shared.getContinuation());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.typeahead;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.romaframework.frontend.util.BackgroundExecutor;
+
+/**
+ * Coalesces the type-ahead requests with the same key, usually the session and the field. When a new request arrives the previous
+ * ones become stale: the ones submitted in background and not started yet are skipped, the ones already running are not
+ * interrupted and complete their query, but their result is discarded.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class TypeAheadCoalescer {
+
+	private static TypeAheadCoalescer				instance	= new TypeAheadCoalescer();
+
+	private final AtomicLong								counter		= new AtomicLong();
+	private final ConcurrentMap<Object, Long>	latest		= new ConcurrentHashMap<Object, Long>();
+
+	protected TypeAheadCoalescer() {
+	}
+
+	public static TypeAheadCoalescer getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Execute the request on the calling thread. The query always runs: only its result is discarded if it became stale.
+	 * 
+	 * @return the result, null if a newer request with the same key arrived in the meanwhile.
+	 */
+	public <T> TypeAheadResult<T> search(Object iKey, TypeAheadProvider<T> iProvider, String iText, String iContinuation, int iLimit) {
+		Long generation = begin(iKey);
+		try {
+			TypeAheadResult<T> result = iProvider.search(iText, iContinuation, iLimit);
+			return isCurrent(iKey, generation) ? result : null;
+		} finally {
+			latest.remove(iKey, generation);
+		}
+	}
+
+	/**
+	 * Execute the request in background with its own Roma context, since the providers query the persistence. The future returns
+	 * null if a newer request with the same key arrived before the end.
+	 */
+	public <T> Future<TypeAheadResult<T>> submit(final Object iKey, final TypeAheadProvider<T> iProvider, final String iText,
+			final String iContinuation, final int iLimit) {
+		final Long generation = begin(iKey);
+		return BackgroundExecutor.getInstance().submitInContext(new Callable<TypeAheadResult<T>>() {
+			public TypeAheadResult<T> call() throws Exception {
+				try {
+					if (!isCurrent(iKey, generation))
+						// SUPERSEDED BEFORE STARTING
+						return null;
+					TypeAheadResult<T> result = iProvider.search(iText, iContinuation, iLimit);
+					return isCurrent(iKey, generation) ? result : null;
+				} finally {
+					latest.remove(iKey, generation);
+				}
+			}
+		});
+	}
+
+	private Long begin(Object iKey) {
+		Long generation = counter.incrementAndGet();
+		latest.put(iKey, generation);
+		return generation;
+	}
+
+	private boolean isCurrent(Object iKey, Long iGeneration) {
+		return iGeneration.equals(latest.get(iKey));
+	}
+}
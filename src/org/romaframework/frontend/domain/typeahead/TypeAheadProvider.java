@@ -0,0 +1,40 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.typeahead;
+
+/**
+ * Provides the suggestions for a text typed by the user, one page at a time.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ * @param <T>
+ *          type of the suggestions
+ */
+public interface TypeAheadProvider<T> {
+
+	/**
+	 * Return the suggestions for the text.
+	 * 
+	 * @param iText
+	 *          the text typed
+	 * @param iContinuation
+	 *          the continuation of a previous result to get the next page, null for the first page
+	 * @param iLimit
+	 *          maximum number of suggestions to return
+	 */
+	public TypeAheadResult<T> search(String iText, String iContinuation, int iLimit);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2006 Luca Garulli (luca.garulli--at--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.romaframework.frontend.domain.typeahead;
+
+import java.util.List;
+
+/**
+ * A page of suggestions with the continuation to get the next one.
+ * 
+ * @author Luca Garulli (luca.garulli--at--assetdata.it)
+ * 
+ */
+public class TypeAheadResult<T> {
+
+	protected List<T>	items;
+	protected String	continuation;
+
+	public TypeAheadResult(List<T> iItems, String iContinuation) {
+		items = iItems;
+		continuation = iContinuation;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * Return the token to pass to the provider to get the next page, null if there are no more suggestions.
+	 */
+	public String getContinuation() {
+		return continuation;
+	}
+
+	public boolean hasMore() {
+		return continuation != null;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ *
+ * Copyright 2010 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.domain.wrapper;
+
+import java.util.Collection;
+
+import org.romaframework.frontend.domain.typeahead.TypeAheadResult;
+
+/**
+ * Source of the available elements of a SelectionBoxElement, loaded a page at a time.
+ * 
+ * @author luca.molino
+ * 
+ */
+public interface AvailableElementsSource<T> {
+
+	/**
+	 * Load a page of the elements matching the text and not excluded.
+	 * 
+	 * @param iText
+	 *          text to match, null for all the elements
+	 * @param iExcluded
+	 *          elements to skip, usually the selected ones
+	 * @param iContinuation
+	 *          continuation of the previous page, null for the first page
+	 * @param iLimit
+	 *          max number of elements to load, 0 to load all the remaining ones
+	 */
+	public TypeAheadResult<T> load(String iText, Collection<T> iExcluded, String iContinuation, int iLimit);
+}
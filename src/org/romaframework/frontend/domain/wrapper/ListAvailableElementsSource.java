@@ -0,0 +1,55 @@
+/*
+ *
+ * Copyright 2010 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.domain.wrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.romaframework.frontend.domain.typeahead.TypeAheadResult;
+
+/**
+ * Available elements taken from a list in memory. The text is matched, ignoring the case, against the toString() of the elements.
+ * 
+ * @author luca.molino
+ * 
+ */
+public class ListAvailableElementsSource<T> implements AvailableElementsSource<T> {
+
+	protected List<T>	elements;
+
+	public ListAvailableElementsSource(List<T> iElements) {
+		elements = iElements;
+	}
+
+	public TypeAheadResult<T> load(String iText, Collection<T> iExcluded, String iContinuation, int iLimit) {
+		String text = iText != null && iText.length() > 0 ? iText.toLowerCase() : null;
+		List<T> result = new ArrayList<T>();
+		int offset = iContinuation != null ? Integer.parseInt(iContinuation) : 0;
+		for (; offset < elements.size(); ++offset) {
+			T element = elements.get(offset);
+			if (iExcluded != null && iExcluded.contains(element))
+				continue;
+			if (text != null && (element == null || element.toString().toLowerCase().indexOf(text) == -1))
+				continue;
+			if (iLimit > 0 && result.size() == iLimit)
+				return new TypeAheadResult<T>(result, String.valueOf(offset));
+			result.add(element);
+		}
+		return new TypeAheadResult<T>(result, null);
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ * Copyright 2010 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.domain.wrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.romaframework.aspect.persistence.PersistenceAspect;
+import org.romaframework.aspect.persistence.QueryByFilter;
+import org.romaframework.aspect.persistence.QueryByFilterItemGroup;
+import org.romaframework.core.Roma;
+import org.romaframework.core.schema.SchemaClass;
+import org.romaframework.core.schema.SchemaHelper;
+import org.romaframework.frontend.domain.crud.CRUDHelper;
+import org.romaframework.frontend.domain.typeahead.TypeAheadResult;
+
+/**
+ * Available elements loaded by query a page at a time. The text is matched by LIKE on any of the text fields, so they should cover
+ * what the toString() of the elements displays. If the key field is set the
+ * excluded elements are skipped by the query itself, otherwise they are skipped in memory while reading the pages. The pages are
+ * always sorted by the key of the entity, so they don't overlap.
+ * 
+ * @author luca.molino
+ * 
+ */
+public class QueryAvailableElementsSource<T> implements AvailableElementsSource<T> {
+
+	/**
+	 * Max number of excluded elements filtered by the query, above it they are filtered in memory.
+	 */
+	public static final int	MAX_EXCLUDED_IN_QUERY	= 500;
+
+	protected Class<T>			entityClass;
+	protected String[]			textFields;
+	protected String				keyField;
+	protected String[]			orderFields;
+
+	/**
+	 * Derive the text fields and the key field from the entity class.
+	 * 
+	 * @see CRUDHelper#getTextFields(SchemaClass)
+	 * @see CRUDHelper#getKeyFields(SchemaClass)
+	 */
+	public QueryAvailableElementsSource(Class<T> iEntityClass) {
+		this(iEntityClass, CRUDHelper.getTextFields(Roma.schema().getSchemaClass(iEntityClass)), getSingleKeyField(iEntityClass));
+	}
+
+	/**
+	 * @param iTextFields
+	 *          fields to match by LIKE, the element is found if any of them matches. If null the text is matched in memory against the
+	 *          toString() of the elements.
+	 * @param iKeyField
+	 *          field identifying the elements, used to exclude them and to sort the pages. If null the pages are sorted by the key
+	 *          fields of the entity.
+	 */
+	public QueryAvailableElementsSource(Class<T> iEntityClass, String[] iTextFields, String iKeyField) {
+		entityClass = iEntityClass;
+		textFields = iTextFields != null && iTextFields.length > 0 ? iTextFields : null;
+		keyField = iKeyField;
+		if (keyField != null)
+			orderFields = new String[] { keyField };
+		else
+			orderFields = CRUDHelper.getKeyFields(Roma.schema().getSchemaClass(iEntityClass));
+		if (orderFields == null)
+			// NO KEY: THE TEXT FIELDS ARE THE BEST ORDER AVAILABLE
+			orderFields = textFields;
+	}
+
+	private static String getSingleKeyField(Class<?> iEntityClass) {
+		String[] keys = CRUDHelper.getKeyFields(Roma.schema().getSchemaClass(iEntityClass));
+		return keys != null && keys.length == 1 ? keys[0] : null;
+	}
+
+	public TypeAheadResult<T> load(String iText, Collection<T> iExcluded, String iContinuation, int iLimit) {
+		String text = iText != null && iText.length() > 0 ? iText : null;
+		boolean excludeInQuery = keyField != null && iExcluded != null && !iExcluded.isEmpty()
+				&& iExcluded.size() <= MAX_EXCLUDED_IN_QUERY;
+		QueryByFilter filter = createQuery(text, excludeInQuery ? iExcluded : null);
+
+		String lowerText = text != null && textFields == null ? text.toLowerCase() : null;
+		List<T> result = new ArrayList<T>();
+		int offset = iContinuation != null ? Integer.parseInt(iContinuation) : 0;
+		while (true) {
+			// ONE MORE ELEMENT TO KNOW IF THERE IS A NEXT PAGE
+			int fetch = iLimit > 0 ? iLimit - result.size() + 1 : 0;
+			if (fetch > 0)
+				filter.setRangeFrom(offset, offset + fetch);
+
+			List<T> page = Roma.context().persistence().query(filter);
+			for (T element : page) {
+				if ((!excludeInQuery && iExcluded != null && iExcluded.contains(element))
+						|| (lowerText != null && (element == null || element.toString().toLowerCase().indexOf(lowerText) == -1))) {
+					offset++;
+					continue;
+				}
+				if (iLimit > 0 && result.size() == iLimit)
+					return new TypeAheadResult<T>(result, String.valueOf(offset));
+				result.add(element);
+				offset++;
+			}
+
+			if (fetch == 0 || page.size() < fetch)
+				return new TypeAheadResult<T>(result, null);
+		}
+	}
+
+	protected QueryByFilter createQuery(String iText, Collection<T> iExcluded) {
+		QueryByFilter filter = new QueryByFilter(entityClass);
+		filter.setMode(PersistenceAspect.FULL_MODE_LOADING);
+		filter.setStrategy(PersistenceAspect.STRATEGY_DETACHING);
+		if (iText != null && textFields != null) {
+			QueryByFilterItemGroup group = new QueryByFilterItemGroup(QueryByFilter.PREDICATE_OR);
+			for (String field : textFields)
+				group.addItem(field, QueryByFilter.FIELD_LIKE, iText);
+			filter.addItem(group);
+		}
+		if (iExcluded != null) {
+			QueryByFilterItemGroup group = new QueryByFilterItemGroup(QueryByFilter.PREDICATE_AND);
+			for (T element : iExcluded)
+				group.addItem(keyField, QueryByFilter.FIELD_NOT_EQUALS, SchemaHelper.getFieldValue(element, keyField));
+			filter.addItem(group);
+		}
+		if (orderFields != null)
+			// STABLE ORDER BETWEEN PAGES
+			for (String field : orderFields)
+				filter.addOrder(field, QueryByFilter.ORDER_ASC);
+		return filter;
+	}
+}
@@ -14,6 +14,7 @@ import org.romaframework.core.schema.SchemaHelper;
 import org.romaframework.frontend.domain.crud.CRUDHelper;
 import org.romaframework.frontend.domain.crud.CRUDInstance;
 import org.romaframework.frontend.domain.crud.CRUDWorkingMode;
+import org.romaframework.frontend.domain.crud.EntityWriteNotifier;
 
 @CoreClass(orderActions = "reset refresh add")
 @ViewClass(label = "")
@@ -41,6 +42,7 @@ public class SelectAddWrapper<T> extends SelectWrapper<T> {
 
 			if (iSelectedInstance != null && !list.contains(iSelectedInstance)) {
 				iSelectedInstance = repository.create(iSelectedInstance, PersistenceAspect.STRATEGY_DETACHING);
+				EntityWriteNotifier.getInstance().entitySaved(iSelectedInstance);
 				needRefresh = true;
 			}
 
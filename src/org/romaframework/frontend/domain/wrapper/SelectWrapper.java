@@ -21,6 +21,13 @@ import org.romaframework.core.schema.SchemaClass;
 import org.romaframework.core.schema.SchemaField;
 import org.romaframework.core.schema.SchemaHelper;
 import org.romaframework.frontend.domain.crud.CRUDException;
+import org.romaframework.frontend.domain.typeahead.QueryTypeAhead;
+import org.romaframework.frontend.domain.typeahead.ListTypeAhead;
+import org.romaframework.frontend.domain.typeahead.ReferenceDataTypeAhead;
+import org.romaframework.frontend.domain.typeahead.TypeAheadCoalescer;
+import org.romaframework.frontend.domain.typeahead.TypeAheadProvider;
+import org.romaframework.frontend.domain.typeahead.TypeAheadResult;
+import org.romaframework.frontend.util.ReferenceDataCache;
 
 @CoreClass(orderActions = "reset refresh")
 @ViewClass(label = "")
@@ -40,6 +47,20 @@ public class SelectWrapper<T> implements ViewCallback, ObjectWrapper, Bindable {
 
 	private boolean														autoSelection	= false;
 
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected int															typeAheadLimit	= 50;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected String													typeAheadField;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected String													typeAheadText;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected String													typeAheadContinuation;
+
+	private transient TypeAheadProvider<T>		typeAheadProvider;
+
 	public SelectWrapper() {
 	}
 
@@ -111,9 +132,106 @@ public class SelectWrapper<T> implements ViewCallback, ObjectWrapper, Bindable {
 	/**
 	 * Overwrite this method to use custom filters on search query.
 	 */
+	@SuppressWarnings("unchecked")
 	protected void load() {
-		if (repository != null)
-			list = repository.getAll(Roma.context().persistence(), PersistenceAspect.STRATEGY_DETACHING, null);
+		if (repository != null) {
+			List<T> all = ReferenceDataCache.getInstance().getAll((Class<T>) sourceField.getLanguageType(), new ReferenceDataCache.Loader<T>() {
+				public List<T> load() {
+					return repository.getAll(Roma.context().persistence(), PersistenceAspect.STRATEGY_DETACHING, null);
+				}
+			});
+			list = all;
+		}
+	}
+
+	/**
+	 * Replace the list with the first typeAheadLimit elements matching the text.
+	 */
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void typeAhead(String iText) {
+		typeAheadText = iText;
+		typeAheadContinuation = null;
+		TypeAheadResult<T> result = searchTypeAhead();
+		if (result == null)
+			// SUPERSEDED BY A NEWER SEARCH
+			return;
+		list = new ArrayList<T>(result.getItems());
+		typeAheadContinuation = result.getContinuation();
+		Roma.fieldChanged(this, "list");
+	}
+
+	/**
+	 * Append to the list the next page of the elements matching the last text searched.
+	 */
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void typeAheadMore() {
+		if (typeAheadContinuation == null)
+			return;
+		TypeAheadResult<T> result = searchTypeAhead();
+		if (result == null)
+			return;
+		if (list == null)
+			list = new ArrayList<T>();
+		list.addAll(result.getItems());
+		typeAheadContinuation = result.getContinuation();
+		Roma.fieldChanged(this, "list");
+	}
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public boolean isTypeAheadMore() {
+		return typeAheadContinuation != null;
+	}
+
+	protected TypeAheadResult<T> searchTypeAhead() {
+		return TypeAheadCoalescer.getInstance().search(this, getTypeAheadProvider(), typeAheadText, typeAheadContinuation, typeAheadLimit);
+	}
+
+	/**
+	 * Overwrite this method to use a custom provider. By default the cached reference classes are searched in memory, the others by
+	 * query on typeAheadField if set, otherwise in memory on the elements already loaded by the wrapper.
+	 */
+	@SuppressWarnings("unchecked")
+	protected TypeAheadProvider<T> getTypeAheadProvider() {
+		if (typeAheadProvider == null) {
+			Class<T> cls = (Class<T>) sourceField.getLanguageType();
+			if (ReferenceDataCache.getInstance().isCached(cls))
+				typeAheadProvider = new ReferenceDataTypeAhead<T>(cls, new ReferenceDataCache.Loader<T>() {
+					public List<T> load() {
+						return repository.getAll(Roma.context().persistence(), PersistenceAspect.STRATEGY_DETACHING, null);
+					}
+				}, true);
+			else if (typeAheadField != null)
+				typeAheadProvider = new QueryTypeAhead<T>(cls, typeAheadField);
+			else {
+				// NOTHING TO QUERY: SEARCH THE ELEMENTS ALREADY LOADED, NEVER RELOADING THEM ON EVERY KEYSTROKE
+				if (list == null)
+					load();
+				typeAheadProvider = new ListTypeAhead<T>(list != null ? list : new ArrayList<T>(), true);
+			}
+		}
+		return typeAheadProvider;
+	}
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public int getTypeAheadLimit() {
+		return typeAheadLimit;
+	}
+
+	public void setTypeAheadLimit(int iTypeAheadLimit) {
+		typeAheadLimit = iTypeAheadLimit;
+	}
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public String getTypeAheadField() {
+		return typeAheadField;
+	}
+
+	/**
+	 * Set the field of the elements to query by LIKE on type-ahead, to avoid loading all the elements of not cached classes.
+	 */
+	public void setTypeAheadField(String iTypeAheadField) {
+		typeAheadField = iTypeAheadField;
+		typeAheadProvider = null;
 	}
 
 	@ViewAction(visible = AnnotationConstants.FALSE)
@@ -131,6 +249,7 @@ public class SelectWrapper<T> implements ViewCallback, ObjectWrapper, Bindable {
 
 	@ViewAction(visible = AnnotationConstants.FALSE)
 	public void refresh() {
+		typeAheadProvider = null;
 		load();
 		Roma.fieldChanged(this, "list");
 	}
@@ -193,6 +312,7 @@ public class SelectWrapper<T> implements ViewCallback, ObjectWrapper, Bindable {
 
 		clazz = Roma.schema().getSchemaClass(source);
 		repository = (PersistenceAspectRepository) Roma.repository((Class) sourceField.getLanguageType());
+		typeAheadProvider = null;
 		load();
 		if (this.autoSelection && list != null && list.size() == 1) {
 			setSelection(list.get(0));
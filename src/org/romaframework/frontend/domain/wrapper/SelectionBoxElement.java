@@ -18,7 +18,10 @@ package org.romaframework.frontend.domain.wrapper;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.naming.ConfigurationException;
 
@@ -31,6 +34,8 @@ import org.romaframework.aspect.view.annotation.ViewField;
 import org.romaframework.core.Roma;
 import org.romaframework.core.schema.SchemaClass;
 import org.romaframework.core.schema.SchemaHelper;
+import org.romaframework.frontend.domain.typeahead.TypeAheadResult;
+import org.romaframework.frontend.util.IndexedList;
 
 /**
  * Wrapper view class that implements a List selection between available elements and selected elements
@@ -40,6 +45,8 @@ import org.romaframework.core.schema.SchemaHelper;
  */
 public class SelectionBoxElement<T> {
 
+	public static final int										DEF_PAGE_SIZE			= 100;
+
 	protected Object				instance;
 
 	protected String				fieldName;
@@ -51,19 +58,46 @@ public class SelectionBoxElement<T> {
 	protected Collection<T>	allElements				= null;
 
 	@ViewField(render = ViewConstants.RENDER_LIST, selectionField = "availableElementSelected", enabled = AnnotationConstants.FALSE)
-	protected Collection<T>	availableElements	= new ArrayList<T>();
+	protected Collection<T>	availableElements	= new IndexedList<T>();
 
 	@ViewField(visible = AnnotationConstants.FALSE)
 	protected T							availableElementSelected;
 
 	@ViewField(render = ViewConstants.RENDER_LIST, selectionField = "selectedElementSelected", enabled = AnnotationConstants.FALSE)
-	protected List<T>				selectedElements	= new ArrayList<T>();
+	protected List<T>				selectedElements	= new IndexedList<T>();
 
 	@ViewField(visible = AnnotationConstants.FALSE)
 	protected T							selectedElementSelected;
 
+	protected String				availableFilter;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected AvailableElementsSource<T>	source;
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	protected int						pageSize					= DEF_PAGE_SIZE;
+
+	private String					availableContinuation;
+
+	/**
+	 * Selected elements when the available ones started to be loaded: they are excluded by the source, the elements selected later
+	 * are skipped while loading.
+	 */
+	private Collection<T>		excluded;
+
 	public SelectionBoxElement(Object iInstance, String iFieldName, List<T> sourceList) throws IllegalArgumentException {
 		allElements = sourceList;
+		source = new ListAvailableElementsSource<T>(sourceList);
+		instance = iInstance;
+		fieldName = iFieldName;
+		init();
+	}
+
+	/**
+	 * Load the available elements from the source a page at a time.
+	 */
+	public SelectionBoxElement(Object iInstance, String iFieldName, AvailableElementsSource<T> iSource) throws IllegalArgumentException {
+		source = iSource;
 		instance = iInstance;
 		fieldName = iFieldName;
 		init();
@@ -74,17 +108,37 @@ public class SelectionBoxElement<T> {
 		SchemaClass genericClass = SchemaHelper.getSuperclassGenericType(Roma.schema().getSchemaClass(this.getClass()));
 		instance = iInstance;
 		fieldName = iFieldName;
-		allElements = loadElements((Class<T>) genericClass.getLanguageType());
+		source = createSource((Class<T>) genericClass.getLanguageType());
 		init();
 	}
 
 	protected SelectionBoxElement(Object iInstance, String iFieldName, Class<T> iClass) throws IllegalArgumentException {
 		instance = iInstance;
 		fieldName = iFieldName;
-		allElements = loadElements(iClass);
+		source = createSource(iClass);
 		init();
 	}
 
+	/**
+	 * Create the source of the available elements: by default they are queried a page at a time, matching the text on the fields
+	 * returned by CRUDHelper.getTextFields(). Overwrite this method to pass other fields, or to return createListSource() to load
+	 * all the elements at once with loadElements().
+	 */
+	protected AvailableElementsSource<T> createSource(Class<T> iClass) {
+		return new QueryAvailableElementsSource<T>(iClass);
+	}
+
+	/**
+	 * Create a source on all the elements returned by loadElements().
+	 */
+	protected AvailableElementsSource<T> createListSource(Class<T> iClass) {
+		allElements = loadElements(iClass);
+		return new ListAvailableElementsSource<T>((List<T>) allElements);
+	}
+
+	/**
+	 * Overwrite this method to load all the available elements with a custom query, used by createListSource().
+	 */
 	protected List<T> loadElements(Class<T> iClass) {
 		PersistenceAspect db = Roma.context().persistence();
 		QueryByFilter filter = new QueryByFilter(iClass);
@@ -136,87 +190,144 @@ public class SelectionBoxElement<T> {
 		selectElement();
 	}
 
+	/**
+	 * Select all the available elements matching the filter, loading the ones not loaded yet.
+	 */
 	public void addAll() throws IllegalArgumentException {
-		List<T> toAdd = new ArrayList<T>(availableElements);
-		for (T element : toAdd) {
-			availableElementSelected = element;
-			afterAvailableElementSelection();
-		}
+		if (availableContinuation != null)
+			loadAvailable(0);
+		selectElements(new ArrayList<T>(availableElements));
+	}
+
+	/**
+	 * Reload the available elements matching the filter, starting from the first page.
+	 */
+	public void filterAvailable() {
+		availableElements.clear();
+		availableContinuation = null;
+		excluded = new IndexedList<T>(selectedElements);
+		loadAvailable(pageSize);
+		refreshAvailableElements();
+	}
+
+	/**
+	 * Load the next page of the available elements.
+	 */
+	public void moreAvailable() {
+		if (availableContinuation == null)
+			return;
+		loadAvailable(pageSize);
+		refreshAvailableElements();
+	}
+
+	protected void loadAvailable(int iLimit) {
+		TypeAheadResult<T> page = source.load(availableFilter, excluded, availableContinuation, iLimit);
+		for (T element : page.getItems())
+			// SKIP THE ELEMENTS SELECTED OR UNSELECTED AFTER THE FIRST PAGE
+			if (!selectedElements.contains(element) && !availableElements.contains(element))
+				availableElements.add(element);
+		availableContinuation = page.getContinuation();
+	}
+
+	public String getAvailableFilter() {
+		return availableFilter;
+	}
+
+	public void setAvailableFilter(String iAvailableFilter) {
+		availableFilter = iAvailableFilter;
+	}
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public boolean isMoreAvailable() {
+		return availableContinuation != null;
+	}
+
+	@ViewField(visible = AnnotationConstants.FALSE)
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public void setPageSize(int iPageSize) {
+		pageSize = iPageSize;
 	}
 
 	public void removeAll() throws IllegalArgumentException {
-		List<T> selected = new ArrayList<T>(selectedElements);
-		for (T element : selected) {
-			selectedElementSelected = element;
-			afterSelectedElementSelection();
-		}
+		unselectElements(new ArrayList<T>(selectedElements));
 	}
 
-	@SuppressWarnings("unchecked")
 	@ViewAction(visible = AnnotationConstants.FALSE)
 	public void selectElement() throws IllegalArgumentException {
 		if (availableElementSelected == null) {
 			return;
 		}
 
-		boolean added = false;
-
-		if (!selectedElements.contains(availableElementSelected)) {
-			selectedElements.add(availableElementSelected);
-			availableElements.remove(availableElementSelected);
-			added = true;
-		}
-
-		if (added) {
-			Object value = SchemaHelper.getFieldValue(instance, fieldName);
-			if (value instanceof Collection<?>) {
-				((Collection<T>) value).add(availableElementSelected);
-				SchemaHelper.setFieldValue(instance, fieldName, value);
-			} else {
-				throw new IllegalArgumentException("Field " + fieldName + " isn't a collection.");
-			}
-		}
+		selectElements(Collections.singletonList(availableElementSelected));
 		availableElementSelected = null;
-		refreshElements();
-
 	}
 
-	@SuppressWarnings("unchecked")
 	@ViewAction(visible = AnnotationConstants.FALSE)
 	public void unselectElement() throws IllegalArgumentException {
 		if (selectedElementSelected == null) {
 			return;
 		}
 
-		selectedElements.remove(selectedElementSelected);
-		if (!availableElements.contains(selectedElementSelected)) {
-			availableElements.add(selectedElementSelected);
-		}
+		unselectElements(Collections.singletonList(selectedElementSelected));
+		selectedElementSelected = null;
+	}
 
-		Object value = SchemaHelper.getFieldValue(instance, fieldName);
-		if (value instanceof Collection<?>) {
-			((Collection<T>) value).remove(selectedElementSelected);
+	/**
+	 * Move the elements to the selected ones updating the bound field and refreshing the lists only once.
+	 */
+	@SuppressWarnings("unchecked")
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void selectElements(Collection<T> iElements) throws IllegalArgumentException {
+		Set<T> toAdd = new LinkedHashSet<T>();
+		for (T element : iElements)
+			if (!selectedElements.contains(element))
+				toAdd.add(element);
+
+		if (!toAdd.isEmpty()) {
+			Object value = getBoundCollection();
+			selectedElements.addAll(toAdd);
+			availableElements.removeAll(toAdd);
+			((Collection<T>) value).addAll(toAdd);
 			SchemaHelper.setFieldValue(instance, fieldName, value);
-		} else {
-			throw new IllegalArgumentException("Field " + fieldName + " isn't a collection.");
 		}
-		selectedElementSelected = null;
 		refreshElements();
-
 	}
 
+	/**
+	 * Move the elements to the available ones updating the bound field and refreshing the lists only once.
+	 */
 	@SuppressWarnings("unchecked")
-	private void init() throws IllegalArgumentException {
-		availableElements.addAll(allElements);
+	@ViewAction(visible = AnnotationConstants.FALSE)
+	public void unselectElements(Collection<T> iElements) throws IllegalArgumentException {
+		Set<T> toRemove = new LinkedHashSet<T>(iElements);
+		Object value = getBoundCollection();
+
+		selectedElements.removeAll(toRemove);
+		for (T element : toRemove)
+			if (!availableElements.contains(element))
+				availableElements.add(element);
+
+		((Collection<T>) value).removeAll(toRemove);
+		SchemaHelper.setFieldValue(instance, fieldName, value);
+		refreshElements();
+	}
+
+	protected Object getBoundCollection() throws IllegalArgumentException {
 		Object value = SchemaHelper.getFieldValue(instance, fieldName);
-		if (value instanceof Collection<?>) {
-			for (T elem : ((Collection<T>) value)) {
-				selectedElements.add(elem);
-				availableElements.remove(elem);
-			}
-		} else {
+		if (!(value instanceof Collection<?>))
 			throw new IllegalArgumentException("Field " + fieldName + " isn't a collection.");
-		}
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void init() throws IllegalArgumentException {
+		Collection<T> value = (Collection<T>) getBoundCollection();
+		selectedElements.addAll(value);
+		excluded = new IndexedList<T>(selectedElements);
+		loadAvailable(pageSize);
 	}
 
 	protected void refreshElements() {
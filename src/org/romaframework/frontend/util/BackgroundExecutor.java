@@ -0,0 +1,106 @@
+/*
+ *
+ * Copyright 2010 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.romaframework.core.Roma;
+
+/**
+ * Shared pool of daemon threads used by the frontend to execute work out of the request thread, such as count queries. The pool
+ * is bounded: when all the threads are busy and the queue is full the task is executed by the caller.
+ * 
+ * The number of threads can be changed with the system property "roma.frontend.backgroundThreads".
+ */
+public class BackgroundExecutor {
+
+	public static final int						DEF_THREADS		= 4;
+	public static final int						DEF_QUEUE_SIZE	= 256;
+
+	private static BackgroundExecutor	instance				= new BackgroundExecutor();
+
+	private ThreadPoolExecutor				executor;
+
+	protected BackgroundExecutor() {
+		int threads = Integer.getInteger("roma.frontend.backgroundThreads", DEF_THREADS);
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(DEF_QUEUE_SIZE), new ThreadFactory() {
+			private final AtomicInteger	counter	= new AtomicInteger();
+
+			public Thread newThread(Runnable iTask) {
+				Thread thread = new Thread(iTask, "Roma-Frontend-Background-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static BackgroundExecutor getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Return the pool as Executor, to wrap it in an ExecutorCompletionService.
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public <V> Future<V> submit(Callable<V> iTask) {
+		return executor.submit(iTask);
+	}
+
+	/**
+	 * Submit a task that uses the persistence: the task runs with its own Roma context, created before and destroyed after it. If the
+	 * task is executed by the caller because the pool is full, the context of the caller is used.
+	 */
+	public <V> Future<V> submitInContext(Callable<V> iTask) {
+		return executor.submit(inContext(iTask));
+	}
+
+	/**
+	 * Wrap the task to run it with its own Roma context as submitInContext() does, to submit it through another service such as an
+	 * ExecutorCompletionService on getExecutor(). It must be called on the thread submitting the task.
+	 */
+	public <V> Callable<V> inContext(final Callable<V> iTask) {
+		final Thread caller = Thread.currentThread();
+		return new Callable<V>() {
+			public V call() throws Exception {
+				if (Thread.currentThread() == caller)
+					return iTask.call();
+
+				Roma.context().create();
+				try {
+					return iTask.call();
+				} finally {
+					Roma.context().destroy();
+				}
+			}
+		};
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
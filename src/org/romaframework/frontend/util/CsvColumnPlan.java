@@ -0,0 +1,146 @@
+/*
+ *
+ * Copyright 2010 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.romaframework.aspect.view.ViewConstants;
+import org.romaframework.aspect.view.feature.ViewFieldFeatures;
+import org.romaframework.core.schema.SchemaClass;
+import org.romaframework.core.schema.SchemaClassDefinition;
+import org.romaframework.core.schema.SchemaField;
+import org.romaframework.core.schema.SchemaReloadListener;
+
+/**
+ * Columns to export for a SchemaClass, computed once and shared. Visible fields are resolved and the embedded objects are
+ * flattened at creation time, so writing a row reads every field value only once without inspecting the schema features.
+ * Plans are discarded when a class is reloaded.
+ * 
+ * @see RomaCsvGenerator
+ */
+public class CsvColumnPlan {
+
+	private static final Map<SchemaClass, CsvColumnPlan>	plans						= new ConcurrentHashMap<SchemaClass, CsvColumnPlan>();
+	private static final SchemaReloadListener							reloadListener	= new PlanReloadListener();
+
+	protected String[]																		headers;
+	protected Column[]																		columns;
+
+	protected CsvColumnPlan(SchemaClassDefinition iSchema) {
+		List<String> headerList = new ArrayList<String>();
+		columns = compile(iSchema, headerList, new HashSet<SchemaClassDefinition>());
+		headers = headerList.toArray(new String[headerList.size()]);
+	}
+
+	/**
+	 * Return the plan of the class, creating it the first time.
+	 */
+	public static CsvColumnPlan getPlan(SchemaClass iSchema) {
+		CsvColumnPlan plan = plans.get(iSchema);
+		if (plan == null) {
+			plan = new CsvColumnPlan(iSchema);
+			plans.put(iSchema, plan);
+		}
+		return plan;
+	}
+
+	public static void invalidate() {
+		plans.clear();
+	}
+
+	/**
+	 * Listener to register in the Controller to discard the plans on class reloading.
+	 */
+	public static SchemaReloadListener getReloadListener() {
+		return reloadListener;
+	}
+
+	public void appendHeader(StringBuilder csv) {
+		for (String header : headers)
+			RomaCsvGenerator.appendValue(csv, header);
+	}
+
+	public void appendRow(StringBuilder csv, Object entity) {
+		appendColumns(csv, columns, entity);
+	}
+
+	public int getColumnCount() {
+		return headers.length;
+	}
+
+	private static void appendColumns(StringBuilder csv, Column[] iColumns, Object entity) {
+		for (Column column : iColumns) {
+			Object value = entity != null ? column.field.getValue(entity) : null;
+			if (column.embedded != null) {
+				appendColumns(csv, column.embedded, value);
+			} else {
+				RomaCsvGenerator.appendValue(csv, value != null ? value.toString() : "");
+			}
+		}
+	}
+
+	/**
+	 * Compile the columns of the class. iCompiling contains the classes embedding the current one: a class that embeds itself,
+	 * directly or not, is exported as a single column instead of being flattened again.
+	 */
+	private static Column[] compile(SchemaClassDefinition iSchema, List<String> iHeaders, Set<SchemaClassDefinition> iCompiling) {
+		iCompiling.add(iSchema);
+		List<Column> result = new ArrayList<Column>();
+		Iterator<SchemaField> iterator = iSchema.getFieldIterator();
+		while (iterator.hasNext()) {
+			SchemaField schemaField = iterator.next();
+			if (!(Boolean) schemaField.getFeature(ViewFieldFeatures.VISIBLE))
+				continue;
+
+			Column column = new Column(schemaField);
+			if (ViewConstants.RENDER_OBJECTEMBEDDED.equals(schemaField.getFeature(ViewFieldFeatures.RENDER))
+					&& !iCompiling.contains(schemaField.getType())) {
+				column.embedded = compile(schemaField.getType(), iHeaders, iCompiling);
+			} else {
+				iHeaders.add(schemaField.getName());
+			}
+			result.add(column);
+		}
+		iCompiling.remove(iSchema);
+		return result.toArray(new Column[result.size()]);
+	}
+
+	/**
+	 * Embedded classes are part of other plans: remove all of them.
+	 */
+	protected static class PlanReloadListener implements SchemaReloadListener {
+		public void signalUpdatedClass(SchemaClass iClass, File iFile) {
+			plans.clear();
+		}
+	}
+
+	protected static class Column {
+		protected SchemaField	field;
+		protected Column[]		embedded;
+
+		public Column(SchemaField iField) {
+			field = iField;
+		}
+	}
+}
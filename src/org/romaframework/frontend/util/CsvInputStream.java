@@ -0,0 +1,106 @@
+/*
+ *
+ * Copyright 2010 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.util;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+import org.romaframework.core.Roma;
+import org.romaframework.core.schema.SchemaClass;
+
+/**
+ * InputStream that generates the CSV while it's read: only the current row is kept in memory, the next one is pulled from the row
+ * iterator when the previous one has been consumed.
+ * 
+ * @see RomaCsvGenerator
+ */
+public class CsvInputStream extends InputStream {
+
+	protected Iterator<?>		rows;
+	protected SchemaClass		schema;
+	protected Charset				charset;
+
+	protected StringBuilder	line			= new StringBuilder();
+	protected byte[]				buffer		= new byte[0];
+	protected int						position;
+	protected boolean				headerWritten;
+
+	/**
+	 * @param iRows
+	 *          Rows to write, read lazily
+	 * @param iSchema
+	 *          Schema used to render the columns, null to use the schema of the first row
+	 * @param iCharset
+	 *          Charset used to encode the text
+	 */
+	public CsvInputStream(Iterator<?> iRows, SchemaClass iSchema, Charset iCharset) {
+		rows = iRows;
+		schema = iSchema;
+		charset = iCharset;
+	}
+
+	@Override
+	public int read() {
+		if (!fill())
+			return -1;
+		return buffer[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int read = Math.min(len, buffer.length - position);
+		System.arraycopy(buffer, position, b, off, read);
+		position += read;
+		return read;
+	}
+
+	@Override
+	public int available() {
+		return buffer.length - position;
+	}
+
+	/**
+	 * Generate the next row if the current one was completely read.
+	 * 
+	 * @return false if there are no more rows.
+	 */
+	protected boolean fill() {
+		while (position >= buffer.length) {
+			if (!rows.hasNext())
+				return false;
+
+			Object row = rows.next();
+			line.setLength(0);
+			if (!headerWritten) {
+				if (schema == null)
+					schema = Roma.schema().getSchemaClass(row);
+				RomaCsvGenerator.generateHeaderCsvObject(line, schema);
+				headerWritten = true;
+			}
+			RomaCsvGenerator.generateRowCsvObject(line, schema, row);
+
+			buffer = line.toString().getBytes(charset);
+			position = 0;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ *
+ * Copyright 2010 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * List that keeps an hash index of its elements: contains() is O(1) and removeAll()/retainAll() remove the elements in a single
+ * pass. The order of the elements is kept, so it can be sorted or reordered as a normal list.
+ */
+public class IndexedList<T> extends AbstractList<T> implements RandomAccess {
+
+	private final ArrayList<T>						elements;
+	private final Map<Object, Integer>	occurrences;
+
+	public IndexedList() {
+		elements = new ArrayList<T>();
+		occurrences = new HashMap<Object, Integer>();
+	}
+
+	public IndexedList(Collection<? extends T> iElements) {
+		elements = new ArrayList<T>(iElements);
+		occurrences = new HashMap<Object, Integer>(Math.max(16, (int) (elements.size() / .75f) + 1));
+		for (T element : elements)
+			index(element);
+	}
+
+	@Override
+	public T get(int iIndex) {
+		return elements.get(iIndex);
+	}
+
+	@Override
+	public int size() {
+		return elements.size();
+	}
+
+	@Override
+	public boolean contains(Object iElement) {
+		return occurrences.containsKey(iElement);
+	}
+
+	@Override
+	public int indexOf(Object iElement) {
+		return contains(iElement) ? elements.indexOf(iElement) : -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object iElement) {
+		return contains(iElement) ? elements.lastIndexOf(iElement) : -1;
+	}
+
+	@Override
+	public T set(int iIndex, T iElement) {
+		T old = elements.set(iIndex, iElement);
+		unindex(old);
+		index(iElement);
+		return old;
+	}
+
+	@Override
+	public void add(int iIndex, T iElement) {
+		elements.add(iIndex, iElement);
+		index(iElement);
+		modCount++;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> iElements) {
+		elements.addAll(iElements);
+		for (T element : iElements)
+			index(element);
+		modCount++;
+		return !iElements.isEmpty();
+	}
+
+	@Override
+	public T remove(int iIndex) {
+		T old = elements.remove(iIndex);
+		unindex(old);
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public boolean remove(Object iElement) {
+		int pos = indexOf(iElement);
+		if (pos == -1)
+			return false;
+		remove(pos);
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> iElements) {
+		return retain(toSet(iElements), false);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> iElements) {
+		return retain(toSet(iElements), true);
+	}
+
+	@Override
+	public void clear() {
+		elements.clear();
+		occurrences.clear();
+		modCount++;
+	}
+
+	/**
+	 * Compact the list in a single pass keeping the elements contained or not contained in the set.
+	 */
+	private boolean retain(Set<?> iElements, boolean iContained) {
+		int kept = 0;
+		for (int i = 0; i < elements.size(); ++i) {
+			T element = elements.get(i);
+			if (iElements.contains(element) == iContained)
+				elements.set(kept++, element);
+			else
+				unindex(element);
+		}
+		if (kept == elements.size())
+			return false;
+
+		// REMOVE THE TAIL AT ONCE
+		elements.subList(kept, elements.size()).clear();
+		modCount++;
+		return true;
+	}
+
+	private Set<?> toSet(Collection<?> iElements) {
+		return iElements instanceof Set<?> ? (Set<?>) iElements : new HashSet<Object>(iElements);
+	}
+
+	private void index(T iElement) {
+		Integer count = occurrences.get(iElement);
+		occurrences.put(iElement, count == null ? 1 : count + 1);
+	}
+
+	private void unindex(T iElement) {
+		Integer count = occurrences.get(iElement);
+		if (count == null)
+			return;
+		if (count == 1)
+			occurrences.remove(iElement);
+		else
+			occurrences.put(iElement, count - 1);
+	}
+}
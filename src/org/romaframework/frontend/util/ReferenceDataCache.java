@@ -0,0 +1,327 @@
+/*
+ *
+ * Copyright 2010 Luca Molino (luca.molino--AT--assetdata.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.romaframework.frontend.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.romaframework.frontend.domain.crud.EntityWriteNotifier;
+
+/**
+ * Cache of the reference data shared by all the sessions. Only the registered classes are cached. The list of all the instances of a
+ * class is loaded once and reused until it expires or an instance of the class is written through the frontend. Lists bigger than
+ * maxElements are not cached.
+ * <p>
+ * The instances are cached as serialized snapshots and every caller receives its own copies, so a session can't change the
+ * instances used by the others. Classes that are not Serializable are not cached.
+ * </p>
+ * <p>
+ * Writes done directly through the repositories or the PersistenceAspect, out of the frontend, are not notified: the instances
+ * cached are refreshed only after timeToLive. Call invalidate() after those writes.
+ * </p>
+ * 
+ */
+public class ReferenceDataCache {
+
+	public static final long											DEF_TIME_TO_LIVE	= 10 * 60 * 1000;
+	public static final int												DEF_MAX_ELEMENTS	= 5000;
+
+	private static ReferenceDataCache							instance					= new ReferenceDataCache();
+
+	private ConcurrentMap<Class<?>, ClassCache>	caches						= new ConcurrentHashMap<Class<?>, ClassCache>();
+
+	private static Log														log								= LogFactory.getLog(ReferenceDataCache.class);
+
+	/**
+	 * Loads all the instances of a class on cache miss.
+	 */
+	public interface Loader<T> {
+		public List<T> load();
+	}
+
+	protected ReferenceDataCache() {
+	}
+
+	public static ReferenceDataCache getInstance() {
+		return instance;
+	}
+
+	public void register(Class<?> iClass) {
+		register(iClass, DEF_TIME_TO_LIVE, DEF_MAX_ELEMENTS);
+	}
+
+	public void register(Class<?> iClass, long iTimeToLive, int iMaxElements) {
+		caches.put(iClass, new ClassCache(iClass, iTimeToLive, iMaxElements));
+	}
+
+	public void unregister(Class<?> iClass) {
+		caches.remove(iClass);
+	}
+
+	public boolean isCached(Class<?> iClass) {
+		return caches.containsKey(iClass);
+	}
+
+	/**
+	 * Return all the instances of the class, from the cache if valid, otherwise from the loader. Concurrent misses of the same class
+	 * wait a single load. The list and the instances returned are copies owned by the caller.
+	 */
+	public <T> List<T> getAll(Class<T> iClass, Loader<T> iLoader) {
+		Snapshot<T> snapshot = getSnapshot(iClass, iLoader);
+		if (snapshot == null)
+			return iLoader.load();
+		return snapshot.copyAll();
+	}
+
+	/**
+	 * Return the snapshot of all the instances of the class, to search them without copying all of them.
+	 * 
+	 * @return the snapshot, null if the class is not cached or its instances can't be cached.
+	 */
+	public <T> Snapshot<T> getSnapshot(Class<T> iClass, Loader<T> iLoader) {
+		ClassCache cache = caches.get(iClass);
+		if (cache == null)
+			return null;
+		return cache.get(iLoader);
+	}
+
+	/**
+	 * Invalidate the cached instances of the class.
+	 */
+	public void invalidate(Class<?> iClass) {
+		ClassCache cache = caches.get(iClass);
+		if (cache != null)
+			cache.invalidate();
+	}
+
+	public void invalidateAll() {
+		for (ClassCache cache : caches.values())
+			cache.invalidate();
+	}
+
+	public Collection<ClassCache> getClassCaches() {
+		return new ArrayList<ClassCache>(caches.values());
+	}
+
+	/**
+	 * Cache of a single class with its statistics.
+	 */
+	public static class ClassCache {
+		protected Class<?>		cachedClass;
+		protected long				timeToLive;
+		protected int					maxElements;
+
+		private volatile Entry	entry;
+		private AtomicLong		hits		= new AtomicLong();
+		private AtomicLong		misses	= new AtomicLong();
+
+		public ClassCache(Class<?> iClass, long iTimeToLive, int iMaxElements) {
+			cachedClass = iClass;
+			timeToLive = iTimeToLive;
+			maxElements = iMaxElements;
+		}
+
+		@SuppressWarnings("unchecked")
+		protected <T> Snapshot<T> get(Loader<T> iLoader) {
+			Entry current = entry;
+			if (isValid(current)) {
+				hits.incrementAndGet();
+				return (Snapshot<T>) current.snapshot;
+			}
+
+			synchronized (this) {
+				current = entry;
+				if (isValid(current)) {
+					// LOADED BY ANOTHER THREAD WHILE WAITING
+					hits.incrementAndGet();
+					return (Snapshot<T>) current.snapshot;
+				}
+
+				misses.incrementAndGet();
+				long version = EntityWriteNotifier.getInstance().getVersion(cachedClass);
+				List<T> elements = iLoader.load();
+				Snapshot<T> snapshot = null;
+				if (elements != null && elements.size() <= maxElements)
+					try {
+						snapshot = new Snapshot<T>(elements);
+					} catch (IOException e) {
+						log.warn("[ReferenceDataCache.get] Cannot cache the instances of " + cachedClass + ": " + e);
+					}
+				entry = snapshot != null ? new Entry(snapshot, version) : null;
+				return snapshot;
+			}
+		}
+
+		public void invalidate() {
+			entry = null;
+		}
+
+		private boolean isValid(Entry iEntry) {
+			return iEntry != null && System.currentTimeMillis() - iEntry.created <= timeToLive
+					&& EntityWriteNotifier.getInstance().getVersion(cachedClass) == iEntry.version;
+		}
+
+		public Class<?> getCachedClass() {
+			return cachedClass;
+		}
+
+		public int getElements() {
+			Entry current = entry;
+			return isValid(current) ? current.snapshot.size() : 0;
+		}
+
+		public long getHits() {
+			return hits.get();
+		}
+
+		public long getMisses() {
+			return misses.get();
+		}
+
+		/**
+		 * Return the percentage of the requests served by the cache.
+		 */
+		public int getHitRate() {
+			long total = hits.get() + misses.get();
+			return total == 0 ? 0 : (int) (hits.get() * 100 / total);
+		}
+
+		public void resetStatistics() {
+			hits.set(0);
+			misses.set(0);
+		}
+	}
+
+	/**
+	 * Serialized copy of the instances of a class. The list is serialized as a single stream, so the objects shared by the instances
+	 * stay shared in the copies and copyAll() reads a single stream. A snapshot never changes: a reload creates a new one.
+	 */
+	public static class Snapshot<T> {
+		private final byte[]		serialized;
+		private final List<T>		elements;
+
+		@SuppressWarnings("unchecked")
+		protected Snapshot(List<T> iElements) throws IOException {
+			serialized = serialize(new ArrayList<T>(iElements));
+			try {
+				elements = Collections.unmodifiableList((List<T>) deserialize(serialized));
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			}
+		}
+
+		/**
+		 * Return the instances shared by all the callers, to read them only: never change or return them. Use copy() to obtain an
+		 * instance owned by the caller.
+		 */
+		public List<T> getElements() {
+			return elements;
+		}
+
+		/**
+		 * Return a copy of the instance at the position received, to copy only the few instances found by a search. The instance is
+		 * copied from the shared one, that is never changed.
+		 */
+		@SuppressWarnings("unchecked")
+		public T copy(int iIndex) {
+			try {
+				return (T) deserialize(serialize(elements.get(iIndex)));
+			} catch (Exception e) {
+				throw new IllegalStateException("Error on copying the cached instance " + iIndex, e);
+			}
+		}
+
+		/**
+		 * Return a copy of all the instances, read from the serialized list in a single pass.
+		 */
+		@SuppressWarnings("unchecked")
+		public List<T> copyAll() {
+			try {
+				return (List<T>) deserialize(serialized);
+			} catch (Exception e) {
+				throw new IllegalStateException("Error on copying the cached instances", e);
+			}
+		}
+
+		public int size() {
+			return elements.size();
+		}
+
+		private static byte[] serialize(Object iObject) throws IOException {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(buffer);
+			out.writeObject(iObject);
+			out.close();
+			return buffer.toByteArray();
+		}
+
+		private static Object deserialize(byte[] iSerialized) throws IOException, ClassNotFoundException {
+			ObjectInputStream in = new SnapshotInputStream(new ByteArrayInputStream(iSerialized));
+			try {
+				return in.readObject();
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Resolves the classes with the context class loader, since the entity classes can be reloaded.
+	 */
+	private static class SnapshotInputStream extends ObjectInputStream {
+		public SnapshotInputStream(InputStream iInput) throws IOException {
+			super(iInput);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass iDescriptor) throws IOException, ClassNotFoundException {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			if (loader == null)
+				return super.resolveClass(iDescriptor);
+			try {
+				return Class.forName(iDescriptor.getName(), false, loader);
+			} catch (ClassNotFoundException e) {
+				return super.resolveClass(iDescriptor);
+			}
+		}
+	}
+
+	private static class Entry {
+		private final Snapshot<?>	snapshot;
+		private final long				version;
+		private final long				created	= System.currentTimeMillis();
+
+		public Entry(Snapshot<?> iSnapshot, long iVersion) {
+			version = iVersion;
+			snapshot = iSnapshot;
+		}
+	}
+}
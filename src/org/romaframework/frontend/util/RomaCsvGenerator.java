@@ -16,166 +16,89 @@
  */
 package org.romaframework.frontend.util;
 
-import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
 import org.romaframework.aspect.reporting.ReportingConstants;
-import org.romaframework.aspect.view.ViewConstants;
 import org.romaframework.aspect.view.command.impl.DownloadStreamViewCommand;
-import org.romaframework.aspect.view.feature.ViewFieldFeatures;
 import org.romaframework.core.Roma;
 import org.romaframework.core.schema.SchemaClass;
-import org.romaframework.core.schema.SchemaClassDefinition;
-import org.romaframework.core.schema.SchemaField;
 
 /**
- * CSV Generator from List or Object[] using SchemaClass to render columns and data
+ * CSV Generator from List or Object[] using SchemaClass to render columns and data. The CSV is generated while the download is
+ * read, so also big results can be exported passing an Iterator that loads the rows lazily. Values are quoted following RFC-4180.
+ * Columns are resolved once per class by CsvColumnPlan.
  * 
  * @author luca.molino
  * 
  */
 public class RomaCsvGenerator {
 
-	public static final String	TEXT_DELIMITER	= "\"";
-	public static final String	FIELD_DELIMITER	= ";";
+	public static final String	TEXT_DELIMITER		= "\"";
+	public static final String	FIELD_DELIMITER		= ";";
+	public static final String	RECORD_DELIMITER	= "\r\n";
 
 	public static void generateCsv(List<? extends Object> list, String fileName) {
-		if (list.size() > 0) {
-			SchemaClass schema = Roma.schema().getSchemaClass(list.get(0));
-			generateCsv(list, schema, fileName);
-		} else {
-			generateCsv(list, null, fileName);
-		}
+		generateCsv(list.iterator(), null, fileName, Charset.defaultCharset());
 	}
 
 	public static void generateCsv(Object[] list, String fileName) {
-		if (list.length > 0) {
-			SchemaClass schema = Roma.schema().getSchemaClass(list[0]);
-			generateCsv(list, schema, fileName);
-		} else {
-			generateCsv(list, null, fileName);
-		}
+		generateCsv(Arrays.asList(list).iterator(), null, fileName, Charset.defaultCharset());
 	}
 
 	public static void generateCsv(Object[] list, SchemaClass schema, String fileName) {
-		StringBuilder csv = new StringBuilder();
-		if (list.length > 0) {
-			generateHeaderCsvObject(csv, schema);
-
-			for (Object entity : list) {
-				generateRowCsvObject(csv, schema, entity);
-			}
-		}
-
-		Roma.view().pushCommand(
-				new DownloadStreamViewCommand(new ByteArrayInputStream(csv.toString().getBytes()), fileName + "." + ReportingConstants.DOCUMENT_TYPE_CSV,
-						ReportingConstants.DOCUMENT_TYPE_CSV));
+		generateCsv(Arrays.asList(list).iterator(), schema, fileName, Charset.defaultCharset());
 	}
 
 	public static void generateCsv(List<? extends Object> list, SchemaClass schema, String fileName) {
-		StringBuilder csv = new StringBuilder();
-		if (list.size() > 0) {
-			generateHeaderCsvObject(csv, schema);
-
-			for (Object entity : list) {
-				generateRowCsvObject(csv, schema, entity);
-			}
-		}
+		generateCsv(list.iterator(), schema, fileName, Charset.defaultCharset());
+	}
 
+	/**
+	 * Push the download of the CSV generated from the rows. Rows are read only while the download is consumed.
+	 * 
+	 * @param rows
+	 *          Rows to export
+	 * @param schema
+	 *          Schema used to render the columns, null to use the schema of the first row
+	 * @param fileName
+	 *          Name of the file without extension
+	 * @param charset
+	 *          Charset of the file
+	 */
+	public static void generateCsv(Iterator<?> rows, SchemaClass schema, String fileName, Charset charset) {
 		Roma.view().pushCommand(
-				new DownloadStreamViewCommand(new ByteArrayInputStream(csv.toString().getBytes()), fileName + "." + ReportingConstants.DOCUMENT_TYPE_CSV,
+				new DownloadStreamViewCommand(new CsvInputStream(rows, schema, charset), fileName + "." + ReportingConstants.DOCUMENT_TYPE_CSV,
 						ReportingConstants.DOCUMENT_TYPE_CSV));
 	}
 
-	private static void generateHeaderCsvObject(StringBuilder csv, SchemaClass schema) {
-		Iterator<SchemaField> iterator = schema.getFieldIterator();
-		while (iterator.hasNext()) {
-			SchemaField schemaField = iterator.next();
-			if ((Boolean) schemaField.getFeature(ViewFieldFeatures.VISIBLE)) {
-				if (schemaField.getFeature(ViewFieldFeatures.RENDER) != null && ((String) schemaField.getFeature(ViewFieldFeatures.RENDER)).equals(ViewConstants.RENDER_OBJECTEMBEDDED)) {
-					generateHeaderCsvObjectEmbedded(csv, schemaField.getType());
-				} else {
-					csv.append(TEXT_DELIMITER);
-					csv.append(schemaField.getName());
-					csv.append(TEXT_DELIMITER);
-					csv.append(FIELD_DELIMITER);
-				}
-			}
-		}
-		csv.append("\n");
-	}
-
-	private static void generateHeaderCsvObjectEmbedded(StringBuilder csv, SchemaClassDefinition schema) {
-		Iterator<SchemaField> iterator = schema.getFieldIterator();
-		while (iterator.hasNext()) {
-			SchemaField schemaField = iterator.next();
-			if ((Boolean) schemaField.getFeature(ViewFieldFeatures.VISIBLE)) {
-				if (schemaField.getFeature(ViewFieldFeatures.RENDER) != null && ((String) schemaField.getFeature(ViewFieldFeatures.RENDER)).equals(ViewConstants.RENDER_OBJECTEMBEDDED)) {
-					generateHeaderCsvObjectEmbedded(csv, schemaField.getType());
-				} else {
-					csv.append(TEXT_DELIMITER);
-					csv.append(schemaField.getName());
-					csv.append(TEXT_DELIMITER);
-					csv.append(FIELD_DELIMITER);
-				}
-			}
-		}
+	static void generateHeaderCsvObject(StringBuilder csv, SchemaClass schema) {
+		CsvColumnPlan.getPlan(schema).appendHeader(csv);
+		csv.append(RECORD_DELIMITER);
 	}
 
-	private static void generateRowCsvObject(StringBuilder csv, SchemaClass schema, Object entity) {
-		if (entity == null) {
-			csv.append(TEXT_DELIMITER);
-			csv.append("");
-			csv.append(TEXT_DELIMITER);
-			csv.append(FIELD_DELIMITER);
-		} else {
-			Iterator<SchemaField> iterator = schema.getFieldIterator();
-			while (iterator.hasNext()) {
-				SchemaField schemaField = iterator.next();
-				if ((Boolean) schemaField.getFeature(ViewFieldFeatures.VISIBLE)) {
-					Object valueObject = schemaField.getValue(entity);
-					String renderMode = (String) schemaField.getFeature(ViewFieldFeatures.RENDER);
-					if (renderMode != null && renderMode.equals(ViewConstants.RENDER_OBJECTEMBEDDED)) {
-						generateRowCsvObjectEmbedded(csv, schemaField.getType(), valueObject);
-					} else {
-						String value = schemaField.getValue(entity) != null ? schemaField.getValue(entity).toString() : "";
-						csv.append(TEXT_DELIMITER);
-						csv.append(String.valueOf(value));
-						csv.append(TEXT_DELIMITER);
-						csv.append(FIELD_DELIMITER);
-					}
-				}
-			}
-		}
-		csv.append("\n");
+	static void generateRowCsvObject(StringBuilder csv, SchemaClass schema, Object entity) {
+		CsvColumnPlan.getPlan(schema).appendRow(csv, entity);
+		csv.append(RECORD_DELIMITER);
 	}
 
-	private static void generateRowCsvObjectEmbedded(StringBuilder csv, SchemaClassDefinition schema, Object entity) {
-		if (entity == null) {
-			csv.append(TEXT_DELIMITER);
-			csv.append("");
-			csv.append(TEXT_DELIMITER);
+	/**
+	 * Append a quoted value, preceded by the field delimiter unless it's the first value of the record. Quotes inside the value are
+	 * doubled as required by RFC-4180.
+	 */
+	static void appendValue(StringBuilder csv, String value) {
+		if (csv.length() > 0 && csv.charAt(csv.length() - 1) != RECORD_DELIMITER.charAt(RECORD_DELIMITER.length() - 1))
 			csv.append(FIELD_DELIMITER);
-		} else {
-			Iterator<SchemaField> iterator = schema.getFieldIterator();
-			while (iterator.hasNext()) {
-				SchemaField schemaField = iterator.next();
-				if ((Boolean) schemaField.getFeature(ViewFieldFeatures.VISIBLE)) {
-					Object valueObject = schemaField.getValue(entity);
-					String renderMode = (String) schemaField.getFeature(ViewFieldFeatures.RENDER);
-					if (renderMode != null && renderMode.equals(ViewConstants.RENDER_OBJECTEMBEDDED)) {
-						generateRowCsvObjectEmbedded(csv, schemaField.getType(), valueObject);
-					} else {
-						String value = schemaField.getValue(entity) != null ? schemaField.getValue(entity).toString() : "";
-						csv.append(TEXT_DELIMITER);
-						csv.append(String.valueOf(value));
-						csv.append(TEXT_DELIMITER);
-						csv.append(FIELD_DELIMITER);
-					}
-				}
-			}
+		csv.append(TEXT_DELIMITER);
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c == '"')
+				csv.append('"');
+			csv.append(c);
 		}
+		csv.append(TEXT_DELIMITER);
 	}
 
 }
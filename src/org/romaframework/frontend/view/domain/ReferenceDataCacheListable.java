@@ -0,0 +1,33 @@
+package org.romaframework.frontend.view.domain;
+
+import org.romaframework.aspect.core.annotation.CoreClass;
+import org.romaframework.frontend.util.ReferenceDataCache.ClassCache;
+
+@CoreClass(orderFields = "name elements hits misses hitRate")
+public class ReferenceDataCacheListable {
+	private ClassCache	cache;
+
+	public ReferenceDataCacheListable(ClassCache iCache) {
+		cache = iCache;
+	}
+
+	public String getName() {
+		return cache.getCachedClass().getName();
+	}
+
+	public int getElements() {
+		return cache.getElements();
+	}
+
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	public String getHitRate() {
+		return cache.getHitRate() + "%";
+	}
+}
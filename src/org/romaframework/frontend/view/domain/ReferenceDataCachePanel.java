@@ -0,0 +1,38 @@
+package org.romaframework.frontend.view.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.romaframework.aspect.view.ViewConstants;
+import org.romaframework.aspect.view.annotation.ViewClass;
+import org.romaframework.aspect.view.annotation.ViewField;
+import org.romaframework.core.Roma;
+import org.romaframework.frontend.util.ReferenceDataCache;
+import org.romaframework.frontend.util.ReferenceDataCache.ClassCache;
+
+@ViewClass(label = "Reference Data Cache")
+public class ReferenceDataCachePanel implements RomaControlPanelTab {
+
+	@ViewField(render = ViewConstants.RENDER_TABLE, label = "Cached classes")
+	public List<ReferenceDataCacheListable> getCaches() {
+		List<ReferenceDataCacheListable> caches = new ArrayList<ReferenceDataCacheListable>();
+		for (ClassCache cache : ReferenceDataCache.getInstance().getClassCaches())
+			caches.add(new ReferenceDataCacheListable(cache));
+		return caches;
+	}
+
+	public void refresh() {
+		Roma.fieldChanged(this, "caches");
+	}
+
+	public void invalidateAll() {
+		ReferenceDataCache.getInstance().invalidateAll();
+		refresh();
+	}
+
+	public void resetStatistics() {
+		for (ClassCache cache : ReferenceDataCache.getInstance().getClassCaches())
+			cache.resetStatistics();
+		refresh();
+	}
+}